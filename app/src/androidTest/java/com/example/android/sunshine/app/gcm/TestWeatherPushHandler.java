@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Feeds GCM message bundles straight to WeatherPushHandler, the way MyGcmListenerService does,
+    with a fake in place of the sync adapter and the rest of the app.
+ */
+public class TestWeatherPushHandler extends AndroidTestCase {
+    private static final String TEST_LOCATION = "99705";
+    private static final String OTHER_LOCATION = "10001";
+    private static final long TEST_DATE = 1419033600000L;  // December 20th, 2014
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    private FakeCallbacks mCallbacks;
+    private WeatherPushHandler mHandler;
+    private String mSavedLocation;
+
+    /*
+        Counts what the handler asks for instead of syncing and broadcasting.
+     */
+    static class FakeCallbacks implements WeatherPushHandler.Callbacks {
+        int syncRequests;
+        int weatherChanges;
+
+        @Override
+        public void requestExpeditedSync() {
+            syncRequests++;
+        }
+
+        @Override
+        public void onWeatherChanged() {
+            weatherChanges++;
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String locationKey = mContext.getString(R.string.pref_location_key);
+        mSavedLocation = prefs.getString(locationKey, null);
+        prefs.edit().putString(locationKey, TEST_LOCATION).commit();
+
+        long locationId = insertLocation(TEST_LOCATION);
+        ContentValues weatherValues = new ContentValues();
+        weatherValues.put(WeatherEntry.COLUMN_LOC_KEY, locationId);
+        weatherValues.put(WeatherEntry.COLUMN_DATE, TEST_DATE);
+        weatherValues.put(WeatherEntry.COLUMN_DEGREES, 1.1);
+        weatherValues.put(WeatherEntry.COLUMN_HUMIDITY, 1.2);
+        weatherValues.put(WeatherEntry.COLUMN_PRESSURE, 1.3);
+        weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, 75);
+        weatherValues.put(WeatherEntry.COLUMN_MIN_TEMP, 65);
+        weatherValues.put(WeatherEntry.COLUMN_SHORT_DESC, "Asteroids");
+        weatherValues.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+        weatherValues.put(WeatherEntry.COLUMN_WEATHER_ID, 321);
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, weatherValues);
+
+        mCallbacks = new FakeCallbacks();
+        mHandler = new WeatherPushHandler(mContext, mCallbacks);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        SharedPreferences.Editor editor =
+                PreferenceManager.getDefaultSharedPreferences(mContext).edit();
+        String locationKey = mContext.getString(R.string.pref_location_key);
+        if (mSavedLocation == null) {
+            editor.remove(locationKey);
+        } else {
+            editor.putString(locationKey, mSavedLocation);
+        }
+        editor.commit();
+        super.tearDown();
+    }
+
+    public void testPushedValuesAreApplied() {
+        mHandler.onMessage(message("{\"location\": \"" + TEST_LOCATION + "\", \"days\": ["
+                + "{\"date\": " + TEST_DATE + ", \"weather_id\": 500, \"max\": 12.5,"
+                + " \"short_desc\": \"Rain\"}]}"));
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithDate(TEST_LOCATION, TEST_DATE),
+                new String[]{WeatherEntry.COLUMN_WEATHER_ID, WeatherEntry.COLUMN_MAX_TEMP,
+                        WeatherEntry.COLUMN_MIN_TEMP, WeatherEntry.COLUMN_SHORT_DESC},
+                null, null, null);
+        assertTrue("Error: No weather for the pushed day", cursor.moveToFirst());
+        assertEquals(500, cursor.getInt(0));
+        assertEquals(12.5, cursor.getDouble(1));
+        assertEquals("Error: A value that wasn't pushed changed", 65.0, cursor.getDouble(2));
+        assertEquals("Rain", cursor.getString(3));
+        cursor.close();
+
+        assertEquals(1, mCallbacks.weatherChanges);
+        assertEquals("Error: Synced although the push had everything", 0,
+                mCallbacks.syncRequests);
+    }
+
+    public void testDirtyHintRequestsSync() {
+        mHandler.onMessage(message("{\"location\": \"" + TEST_LOCATION + "\", \"dirty\": true}"));
+
+        assertEquals(1, mCallbacks.syncRequests);
+        assertEquals(0, mCallbacks.weatherChanges);
+    }
+
+    public void testUnknownDayRequestsSync() {
+        mHandler.onMessage(message("{\"location\": \"" + TEST_LOCATION + "\", \"days\": ["
+                + "{\"date\": " + (TEST_DATE + 30 * DAY_IN_MILLIS) + ", \"max\": 1}]}"));
+
+        assertEquals(1, mCallbacks.syncRequests);
+        assertEquals(0, mCallbacks.weatherChanges);
+    }
+
+    public void testOtherLocationIsNotSynced() {
+        insertLocation(OTHER_LOCATION);
+        mHandler.onMessage(message("{\"location\": \"" + OTHER_LOCATION + "\", \"dirty\": true}"));
+
+        assertEquals(0, mCallbacks.syncRequests);
+        assertEquals(0, mCallbacks.weatherChanges);
+    }
+
+    public void testMalformedMessagesAreIgnored() {
+        mHandler.onMessage(new Bundle());
+        mHandler.onMessage(message("not json"));
+        mHandler.onMessage(message("{\"weather\": \"Hail\"}"));
+        mHandler.onMessage(message("{\"location\": \"" + TEST_LOCATION + "\", \"days\": ["
+                + "{\"max\": 1}]}"));
+
+        assertEquals(0, mCallbacks.weatherChanges);
+        assertEquals(0, mCallbacks.syncRequests);
+    }
+
+    public void testMalformedDayIsSkipped() {
+        // The good day still goes in, however the days after it are broken
+        mHandler.onMessage(message("{\"location\": \"" + TEST_LOCATION + "\", \"days\": ["
+                + "{\"date\": " + TEST_DATE + ", \"weather_id\": 500}, {\"max\": 1},"
+                + " {\"date\": " + TEST_DATE + ", \"max\": \"warm\"}, 42]}"));
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithDate(TEST_LOCATION, TEST_DATE),
+                new String[]{WeatherEntry.COLUMN_WEATHER_ID, WeatherEntry.COLUMN_MAX_TEMP},
+                null, null, null);
+        assertTrue("Error: No weather for the pushed day", cursor.moveToFirst());
+        assertEquals(500, cursor.getInt(0));
+        assertEquals(75.0, cursor.getDouble(1));
+        cursor.close();
+        assertEquals(1, mCallbacks.weatherChanges);
+        assertEquals(0, mCallbacks.syncRequests);
+
+        // A good day we don't have still asks for a sync next to a broken one
+        mHandler.onMessage(message("{\"location\": \"" + TEST_LOCATION + "\", \"days\": ["
+                + "{\"max\": 1}, {\"date\": " + (TEST_DATE + 30 * DAY_IN_MILLIS)
+                + ", \"max\": 1}]}"));
+        assertEquals(1, mCallbacks.weatherChanges);
+        assertEquals(1, mCallbacks.syncRequests);
+    }
+
+    private static Bundle message(String data) {
+        Bundle bundle = new Bundle();
+        bundle.putString(WeatherPushHandler.EXTRA_DATA, data);
+        return bundle;
+    }
+
+    private long insertLocation(String locationSetting) {
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        values.put(LocationEntry.COLUMN_CITY_NAME, "North Pole");
+        values.put(LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        values.put(LocationEntry.COLUMN_COORD_LONG, -147.353);
+        return ContentUris.parseId(
+                mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, values));
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+}
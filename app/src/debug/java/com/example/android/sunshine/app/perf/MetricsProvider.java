@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.perf;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.util.Log;
+
+import org.json.JSONException;
+
+/**
+ * Debug builds only: dumps {@link Metrics} as one row holding the JSON, so that it can be
+ * read with adb while the app runs, and resets them on delete:
+ *
+ *   adb shell content query --uri content://com.example.android.sunshine.app.metrics
+ *   adb shell content delete --uri content://com.example.android.sunshine.app.metrics
+ */
+public class MetricsProvider extends ContentProvider {
+    private static final String LOG_TAG = MetricsProvider.class.getSimpleName();
+
+    public static final String COLUMN_JSON = "json";
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder) {
+        MatrixCursor cursor = new MatrixCursor(new String[]{COLUMN_JSON}, 1);
+        try {
+            cursor.addRow(new Object[]{Metrics.toJson().toString()});
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, "Unable to serialize metrics", e);
+        }
+        return cursor;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return "application/json";
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("Metrics are read-only");
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        Metrics.reset();
+        return 0;
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Metrics are read-only");
+    }
+}
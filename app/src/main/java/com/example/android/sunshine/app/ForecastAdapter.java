@@ -17,6 +17,7 @@ package com.example.android.sunshine.app;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.graphics.Bitmap;
 import android.os.Build;
 import android.os.Bundle;
 import android.support.v4.view.ViewCompat;
@@ -30,13 +31,18 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
+import com.example.android.sunshine.app.art.WeatherArtCache;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.perf.Metrics;
+
+import java.util.List;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
  * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
  */
-public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
+public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder>
+        implements ItemChoiceManager.ItemIdPositionLookup {
 
     private static final int VIEW_TYPE_TODAY = 0;
     private static final int VIEW_TYPE_FUTURE_DAY = 1;
@@ -45,6 +51,8 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     private boolean mUseTodayLayout = true;
 
     private Cursor mCursor;
+    // What the rows looked like the last time the cursor was swapped, used to diff refreshes
+    private ForecastDiff.Snapshot mSnapshot;
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
@@ -88,6 +96,9 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mContext = context;
         mClickHandler = dh;
         mEmptyView = emptyView;
+        // Rows are identified by their date, which (unlike the row _ID) survives a sync.
+        // This has to be set before the ItemChoiceManager starts observing us.
+        setHasStableIds(true);
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
     }
@@ -124,23 +135,82 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
+        long start = Metrics.start();
         mCursor.moveToPosition(position);
         int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+
+        bindCondition(forecastAdapterViewHolder, position, weatherId);
+
+        // this enables better animations. even if we lose state due to a device rotation,
+        // the animator can use this to re-find the original view
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
+
+        bindDate(forecastAdapterViewHolder, position);
+        bindTemps(forecastAdapterViewHolder);
+
+        mICM.onBindViewHolder(forecastAdapterViewHolder, position);
+        Metrics.record(Metrics.ADAPTER_BIND, start);
+    }
+
+    /*
+        Partial bind used when ForecastDiff told us which parts of a row changed.  Only the views
+        named by the payloads are touched, so e.g. a temperature update doesn't replay the icon
+        crossfade.
+     */
+    @Override
+    public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position,
+                                 List<Object> payloads) {
+        int changes = 0;
+        for (Object payload : payloads) {
+            if (payload instanceof Integer) {
+                changes |= (Integer) payload;
+            } else {
+                // Unknown payload, play it safe
+                changes = 0;
+                break;
+            }
+        }
+        if (changes == 0) {
+            onBindViewHolder(forecastAdapterViewHolder, position);
+            return;
+        }
+
+        mCursor.moveToPosition(position);
+        if ((changes & ForecastDiff.PAYLOAD_CONDITION) != 0) {
+            bindCondition(forecastAdapterViewHolder, position,
+                    mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID));
+        }
+        if ((changes & ForecastDiff.PAYLOAD_DATE) != 0) {
+            bindDate(forecastAdapterViewHolder, position);
+        }
+        if ((changes & ForecastDiff.PAYLOAD_TEMPS) != 0) {
+            bindTemps(forecastAdapterViewHolder);
+        }
+        mICM.onBindViewHolder(forecastAdapterViewHolder, position);
+    }
+
+    private void bindCondition(ForecastAdapterViewHolder forecastAdapterViewHolder, int position,
+                               int weatherId) {
         int defaultImage;
-        boolean useLongToday;
 
         switch (getItemViewType(position)) {
             case VIEW_TYPE_TODAY:
                 defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
-                useLongToday = true;
                 break;
             default:
                 defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
-                useLongToday = false;
         }
 
+        Bitmap art;
         if ( Utility.usingLocalGraphics(mContext) ) {
             forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
+        } else if ( null != (art = WeatherArtCache.getInstance(mContext).getCachedBitmap(weatherId,
+                getItemViewType(position) == VIEW_TYPE_TODAY
+                        ? WeatherArtCache.TARGET_TODAY : WeatherArtCache.TARGET_LIST)) ) {
+            // Already scaled to the row's icon size, so skip Glide altogether.  Any request
+            // still pending on this recycled view must not overwrite it.
+            Glide.clear(forecastAdapterViewHolder.mIconView);
+            forecastAdapterViewHolder.mIconView.setImageBitmap(art);
         } else {
             Glide.with(mContext)
                     .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
@@ -149,16 +219,6 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
                     .into(forecastAdapterViewHolder.mIconView);
         }
 
-        // this enables better animations. even if we lose state due to a device rotation,
-        // the animator can use this to re-find the original view
-        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
-
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
-
-        // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
-
         // Read weather forecast from cursor
         String description = Utility.getStringForWeatherCondition(mContext, weatherId);
 
@@ -169,7 +229,19 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         // For accessibility, we don't want a content description for the icon field
         // because the information is repeated in the description view and the icon
         // is not individually selectable
+    }
+
+    private void bindDate(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
+        boolean useLongToday = getItemViewType(position) == VIEW_TYPE_TODAY;
+
+        // Read date from cursor
+        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+
+        // Find TextView and set formatted date on it
+        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
+    }
 
+    private void bindTemps(ForecastAdapterViewHolder forecastAdapterViewHolder) {
         // Read high temperature from cursor
         double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
         String highString = Utility.formatTemperature(mContext, high);
@@ -181,8 +253,6 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         String lowString = Utility.formatTemperature(mContext, low);
         forecastAdapterViewHolder.mLowTempView.setText(lowString);
         forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
-
-        mICM.onBindViewHolder(forecastAdapterViewHolder, position);
     }
 
     public void onRestoreInstanceState(Bundle savedInstanceState) {
@@ -206,6 +276,28 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         return (position == 0 && mUseTodayLayout) ? VIEW_TYPE_TODAY : VIEW_TYPE_FUTURE_DAY;
     }
 
+    @Override
+    public long getItemId(int position) {
+        if ( null == mSnapshot || position < 0 || position >= mSnapshot.size() ) {
+            return RecyclerView.NO_ID;
+        }
+        return mSnapshot.dates[position];
+    }
+
+    @Override
+    public int getPositionForItemId(long id) {
+        return getPositionForDate(id);
+    }
+
+    /**
+     * @param date A normalized date, as stored in the weather table
+     * @return the position of the forecast for that date, or RecyclerView.NO_POSITION
+     */
+    public int getPositionForDate(long date) {
+        if ( null == mSnapshot ) return RecyclerView.NO_POSITION;
+        return mSnapshot.positionOf(date);
+    }
+
     @Override
     public int getItemCount() {
         if ( null == mCursor ) return 0;
@@ -213,8 +305,19 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     }
 
     public void swapCursor(Cursor newCursor) {
+        // The ForecastLoader already built the snapshot off the main thread
+        ForecastDiff.Snapshot newSnapshot = newCursor instanceof ForecastLoader.IndexedCursor
+                ? ((ForecastLoader.IndexedCursor) newCursor).getSnapshot()
+                : ForecastDiff.snapshot(mContext, newCursor);
+        ForecastDiff.Snapshot oldSnapshot = mSnapshot;
         mCursor = newCursor;
-        notifyDataSetChanged();
+        mSnapshot = newSnapshot;
+        if (null == oldSnapshot || null == newCursor) {
+            notifyDataSetChanged();
+        } else {
+            // Only tell the RecyclerView about the rows that actually changed
+            ForecastDiff.dispatch(oldSnapshot, newSnapshot, this);
+        }
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
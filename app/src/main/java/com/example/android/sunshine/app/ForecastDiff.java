@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.support.v7.widget.RecyclerView;
+
+import java.util.Arrays;
+
+/**
+ * {@link ForecastDiff} compares two forecast cursors by normalized date and tells a
+ * {@link android.support.v7.widget.RecyclerView.Adapter} exactly which rows were inserted,
+ * removed or changed, so that a refresh only rebinds the rows whose data actually changed.
+ *
+ * Both cursors are expected to be sorted by ascending date, which is what the forecast loader
+ * asks for.  That lets us walk them side by side in a single pass instead of computing a
+ * general edit script.
+ */
+class ForecastDiff {
+
+    // Change payloads passed along with notifyItemChanged.  They are bit flags so that several
+    // payloads queued for the same row can simply be OR'ed together when binding.
+    static final int PAYLOAD_DATE = 1;
+    static final int PAYLOAD_CONDITION = 1 << 1;
+    static final int PAYLOAD_TEMPS = 1 << 2;
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    /**
+     * The handful of values a forecast row displays, copied out of the cursor so that they
+     * can still be compared after the old cursor has been closed by the loader.
+     */
+    static class Snapshot {
+        final long[] dates;
+        final int[] weatherIds;
+        final double[] highs;
+        final double[] lows;
+        // Display settings that change how every row is rendered.
+        final boolean metric;
+        final String artPack;
+
+        private Snapshot(int count, boolean metric, String artPack) {
+            dates = new long[count];
+            weatherIds = new int[count];
+            highs = new double[count];
+            lows = new double[count];
+            this.metric = metric;
+            this.artPack = artPack;
+        }
+
+        int size() {
+            return dates.length;
+        }
+
+        /**
+         * Finds the position of a normalized date.  Forecast days are stored one day apart, so
+         * the position can usually be computed directly from the first date; if there is a gap
+         * in the data we fall back to a binary search.
+         *
+         * @param date The normalized date to look for
+         * @return the position of the date, or RecyclerView.NO_POSITION if it isn't present
+         */
+        int positionOf(long date) {
+            if (dates.length == 0) return RecyclerView.NO_POSITION;
+            long offset = date - dates[0];
+            if (offset >= 0 && offset % DAY_IN_MILLIS == 0) {
+                long guess = offset / DAY_IN_MILLIS;
+                if (guess < dates.length && dates[(int) guess] == date) {
+                    return (int) guess;
+                }
+            }
+            int position = Arrays.binarySearch(dates, date);
+            return position >= 0 ? position : RecyclerView.NO_POSITION;
+        }
+    }
+
+    private ForecastDiff() {
+    }
+
+    /**
+     * Copies the rows of a forecast cursor built with ForecastFragment.FORECAST_COLUMNS.
+     *
+     * @param context Context used to read the unit and art pack preferences
+     * @param cursor The forecast cursor, may be null
+     * @return a snapshot of the cursor, never null
+     */
+    static Snapshot snapshot(Context context, Cursor cursor) {
+        int count = cursor == null ? 0 : cursor.getCount();
+        Snapshot snapshot = new Snapshot(count, Utility.isMetric(context),
+                Utility.getPreferredArtPack(context));
+        for (int i = 0; i < count; i++) {
+            cursor.moveToPosition(i);
+            snapshot.dates[i] = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+            snapshot.weatherIds[i] = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+            snapshot.highs[i] = cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
+            snapshot.lows[i] = cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Dispatches item level insert, remove and change notifications that turn
+     * {@code oldData} into {@code newData}.
+     */
+    static void dispatch(Snapshot oldData, Snapshot newData, RecyclerView.Adapter adapter) {
+        // Settings that affect every row.  Units only touch the temperatures, the art pack only
+        // touches the icon.
+        int globalPayload = 0;
+        if (oldData.metric != newData.metric) {
+            globalPayload |= PAYLOAD_TEMPS;
+        }
+        if (oldData.artPack == null ? newData.artPack != null
+                : !oldData.artPack.equals(newData.artPack)) {
+            globalPayload |= PAYLOAD_CONDITION;
+        }
+        // Once the first day moves (e.g. after midnight) the friendly day names of the
+        // remaining rows ("Today", "Tomorrow", ...) shift as well.
+        if (oldData.size() > 0 && newData.size() > 0 && oldData.dates[0] != newData.dates[0]) {
+            globalPayload |= PAYLOAD_DATE;
+        }
+
+        int oldPos = 0;
+        int newPos = 0;
+        // Position in the adapter as it looks after the notifications sent so far.
+        int position = 0;
+        int pendingRemoves = 0;
+        int pendingInserts = 0;
+
+        while (oldPos < oldData.size() && newPos < newData.size()) {
+            long oldDate = oldData.dates[oldPos];
+            long newDate = newData.dates[newPos];
+            if (oldDate < newDate) {
+                position = flushInserts(adapter, position, pendingInserts);
+                pendingInserts = 0;
+                pendingRemoves++;
+                oldPos++;
+            } else if (oldDate > newDate) {
+                flushRemoves(adapter, position, pendingRemoves);
+                pendingRemoves = 0;
+                pendingInserts++;
+                newPos++;
+            } else {
+                flushRemoves(adapter, position, pendingRemoves);
+                pendingRemoves = 0;
+                position = flushInserts(adapter, position, pendingInserts);
+                pendingInserts = 0;
+
+                int payload = globalPayload | comparePayload(oldData, oldPos, newData, newPos);
+                if (payload != 0) {
+                    adapter.notifyItemChanged(position, payload);
+                }
+                position++;
+                oldPos++;
+                newPos++;
+            }
+        }
+        flushRemoves(adapter, position, pendingRemoves + oldData.size() - oldPos);
+        flushInserts(adapter, position, pendingInserts + newData.size() - newPos);
+
+        // The first row may have switched between the "today" and "future day" layouts.
+        if (oldData.size() > 0 && newData.size() > 0 && oldData.dates[0] != newData.dates[0]) {
+            adapter.notifyItemChanged(0);
+        }
+    }
+
+    private static int comparePayload(Snapshot oldData, int oldPos, Snapshot newData, int newPos) {
+        int payload = 0;
+        if (oldData.weatherIds[oldPos] != newData.weatherIds[newPos]) {
+            payload |= PAYLOAD_CONDITION;
+        }
+        if (Double.compare(oldData.highs[oldPos], newData.highs[newPos]) != 0
+                || Double.compare(oldData.lows[oldPos], newData.lows[newPos]) != 0) {
+            payload |= PAYLOAD_TEMPS;
+        }
+        return payload;
+    }
+
+    private static void flushRemoves(RecyclerView.Adapter adapter, int position, int count) {
+        if (count > 0) {
+            adapter.notifyItemRangeRemoved(position, count);
+        }
+    }
+
+    private static int flushInserts(RecyclerView.Adapter adapter, int position, int count) {
+        if (count > 0) {
+            adapter.notifyItemRangeInserted(position, count);
+        }
+        return position + count;
+    }
+}
@@ -21,6 +21,7 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.res.TypedArray;
 import android.database.Cursor;
+import android.database.MatrixCursor;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
@@ -28,7 +29,6 @@ import android.preference.PreferenceManager;
 import android.support.design.widget.AppBarLayout;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.LinearLayoutManager;
@@ -45,7 +45,10 @@ import android.view.ViewTreeObserver;
 import android.widget.AbsListView;
 import android.widget.TextView;
 
+import com.example.android.sunshine.app.data.ForecastSnapshotFile;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.perf.FrameTracker;
+import com.example.android.sunshine.app.perf.Metrics;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
 /**
@@ -59,6 +62,13 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     private int mChoiceMode;
     private boolean mHoldForTransition;
     private long mInitialSelectedDate = -1;
+    private boolean mForecastShown;
+    // When the current loader was created, until its first data arrives
+    private long mLoaderStartNanos;
+    // True while the list is drawn from the snapshot file rather than the provider
+    private boolean mShowingSnapshot;
+    // Frame timing while the list is dragged or flung
+    private FrameTracker mScrollFrames;
 
     private static final String SELECTED_KEY = "selected_position";
 
@@ -105,6 +115,12 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
          * DetailFragmentCallback for when an item has been selected.
          */
         public void onItemSelected(Uri dateUri, ForecastAdapter.ForecastAdapterViewHolder vh);
+
+        /**
+         * Called once the first load of the forecast is about to be drawn, whether or not it
+         * had any rows.
+         */
+        public void onForecastShown();
     }
 
     public ForecastFragment() {
@@ -200,6 +216,18 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         // specify an adapter (see also next example)
         mRecyclerView.setAdapter(mForecastAdapter);
 
+        mScrollFrames = new FrameTracker(getActivity(), FrameTracker.SCENARIO_LIST_SCROLL);
+        mRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    mScrollFrames.stop();
+                } else {
+                    mScrollFrames.start();
+                }
+            }
+        });
+
         final View parallaxView = rootView.findViewById(R.id.parallax_bar);
         if (null != parallaxView) {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
@@ -259,10 +287,43 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         if ( mHoldForTransition ) {
             getActivity().supportPostponeEnterTransition();
         }
+        if ( savedInstanceState == null ) {
+            showSnapshot();
+        }
         getLoaderManager().initLoader(FORECAST_LOADER, null, this);
         super.onActivityCreated(savedInstanceState);
     }
 
+    /*
+        Draws the rows saved by the last sync, if they are for the current location, so that the
+        list shows up without waiting for the database.  The loader's data replaces them when it
+        arrives, and ForecastDiff makes sure only rows that differ get rebound.
+     */
+    private void showSnapshot() {
+        ForecastSnapshotFile.Rows rows = ForecastSnapshotFile.read(getActivity());
+        String locationSetting = Utility.getPreferredLocation(getActivity());
+        if (null == rows || rows.size() == 0 || !locationSetting.equals(rows.locationSetting)) {
+            return;
+        }
+        MatrixCursor cursor = new MatrixCursor(FORECAST_COLUMNS, rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            cursor.addRow(new Object[]{
+                    i,
+                    rows.dates[i],
+                    "",
+                    rows.highs[i],
+                    rows.lows[i],
+                    rows.locationSetting,
+                    rows.weatherIds[i],
+                    rows.latitude,
+                    rows.longitude
+            });
+        }
+        mShowingSnapshot = true;
+        mForecastAdapter.swapCursor(cursor);
+        restoreSelectionWhenDrawn();
+    }
+
     // since we read the location when we create the loader, all we need to do is restart things
     void onLocationChanged() {
         getLoaderManager().restartLoader(FORECAST_LOADER, null, this);
@@ -305,6 +366,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
         // This is called when a new Loader needs to be created.  This
         // fragment only uses one loader, so we don't care about checking the id.
+        mLoaderStartNanos = Metrics.start();
 
         // To only show current and future dates, filter the query to return weather only for
         // dates after or including today.
@@ -316,7 +378,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
                 locationSetting, System.currentTimeMillis());
 
-        return new CursorLoader(getActivity(),
+        return new ForecastLoader(getActivity(),
                 weatherForLocationUri,
                 FORECAST_COLUMNS,
                 null,
@@ -326,60 +388,80 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+        if (mLoaderStartNanos != 0) {
+            Metrics.record(Metrics.LOADER_FIRST_DATA, mLoaderStartNanos);
+            mLoaderStartNanos = 0;
+        }
+        boolean replacingSnapshot = mShowingSnapshot && data.getCount() > 0;
+        mShowingSnapshot = false;
         mForecastAdapter.swapCursor(data);
         updateEmptyView();
+        if ( replacingSnapshot ) {
+            // Selection and transitions were already handled when the snapshot was drawn, this
+            // just brings the rows up to date.
+            return;
+        }
         if ( data.getCount() == 0 ) {
             getActivity().supportStartPostponedEnterTransition();
+            notifyForecastShown();
         } else {
-            mRecyclerView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
-                @Override
-                public boolean onPreDraw() {
-                    // Since we know we're going to get items, we keep the listener around until
-                    // we see Children.
-                    if (mRecyclerView.getChildCount() > 0) {
-                        mRecyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
-                        int position = mForecastAdapter.getSelectedItemPosition();
-                        if (position == RecyclerView.NO_POSITION &&
-                                -1 != mInitialSelectedDate) {
-                            Cursor data = mForecastAdapter.getCursor();
-                            int count = data.getCount();
-                            int dateColumn = data.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-                            for ( int i = 0; i < count; i++ ) {
-                                data.moveToPosition(i);
-                                if ( data.getLong(dateColumn) == mInitialSelectedDate ) {
-                                    position = i;
-                                    break;
-                                }
-                            }
-                        }
-                        if (position == RecyclerView.NO_POSITION) position = 0;
-                        // If we don't need to restart the loader, and there's a desired position to restore
-                        // to, do so now.
-                        mRecyclerView.smoothScrollToPosition(position);
-                        RecyclerView.ViewHolder vh = mRecyclerView.findViewHolderForAdapterPosition(position);
-                        if (null != vh && mAutoSelectView) {
-                            mForecastAdapter.selectView(vh);
-                        }
-                        if ( mHoldForTransition ) {
-                            getActivity().supportStartPostponedEnterTransition();
-                        }
-                        return true;
-                    }
-                    return false;
-                }
-            });
+            restoreSelectionWhenDrawn();
         }
 
     }
 
+    private void restoreSelectionWhenDrawn() {
+        mRecyclerView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                // Since we know we're going to get items, we keep the listener around until
+                // we see Children.
+                if (mRecyclerView.getChildCount() > 0) {
+                    mRecyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                    int position = mForecastAdapter.getSelectedItemPosition();
+                    if (position == RecyclerView.NO_POSITION &&
+                            -1 != mInitialSelectedDate) {
+                        // The loader indexed the dates off the main thread, so this is a
+                        // lookup rather than a scan of the cursor.
+                        position = mForecastAdapter.getPositionForDate(mInitialSelectedDate);
+                    }
+                    if (position == RecyclerView.NO_POSITION) position = 0;
+                    // If we don't need to restart the loader, and there's a desired position to restore
+                    // to, do so now.
+                    mRecyclerView.smoothScrollToPosition(position);
+                    RecyclerView.ViewHolder vh = mRecyclerView.findViewHolderForAdapterPosition(position);
+                    if (null != vh && mAutoSelectView) {
+                        mForecastAdapter.selectView(vh);
+                    }
+                    if ( mHoldForTransition ) {
+                        getActivity().supportStartPostponedEnterTransition();
+                    }
+                    notifyForecastShown();
+                    return true;
+                }
+                return false;
+            }
+        });
+    }
+
 
 
+    private void notifyForecastShown() {
+        if (!mForecastShown) {
+            mForecastShown = true;
+            ((Callback) getActivity()).onForecastShown();
+        }
+    }
+
     @Override
     public void onDestroy() {
         super.onDestroy();
         if (null != mRecyclerView) {
             mRecyclerView.clearOnScrollListeners();
         }
+        if (null != mScrollFrames) {
+            mScrollFrames.stop();
+        }
     }
 
     @Override
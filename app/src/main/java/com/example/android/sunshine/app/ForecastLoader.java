@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.net.Uri;
+import android.support.v4.content.CursorLoader;
+
+/**
+ * A {@link CursorLoader} for the forecast list that, while it is still on the loader's
+ * background thread, copies the rows into a {@link ForecastDiff.Snapshot}.  The snapshot
+ * doubles as a date to position index, so the UI thread never has to scan the cursor to find
+ * a day or to diff a refresh.
+ */
+class ForecastLoader extends CursorLoader {
+
+    /**
+     * The loaded cursor, together with the snapshot built from it.
+     */
+    static class IndexedCursor extends CursorWrapper {
+        private final ForecastDiff.Snapshot mSnapshot;
+
+        IndexedCursor(Cursor cursor, ForecastDiff.Snapshot snapshot) {
+            super(cursor);
+            mSnapshot = snapshot;
+        }
+
+        ForecastDiff.Snapshot getSnapshot() {
+            return mSnapshot;
+        }
+    }
+
+    ForecastLoader(Context context, Uri uri, String[] projection, String selection,
+                   String[] selectionArgs, String sortOrder) {
+        super(context, uri, projection, selection, selectionArgs, sortOrder);
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        Cursor cursor = super.loadInBackground();
+        if (cursor == null) {
+            return null;
+        }
+        ForecastDiff.Snapshot snapshot = ForecastDiff.snapshot(getContext(), cursor);
+        cursor.moveToPosition(-1);
+        return new IndexedCursor(cursor, snapshot);
+    }
+}
@@ -28,8 +28,9 @@ import android.widget.AbsListView;
 import android.widget.Checkable;
 
 /**
- * The ItemChoiceManager class keeps track of which positions have been selected.  Note that it
- * doesn't take advantage of new adapter features to track changes in the underlying data.
+ * The ItemChoiceManager class keeps track of which positions have been selected.  Item level
+ * inserts and removes reported by the adapter shift the selection along with its row; a full
+ * data set change falls back to searching by stable ID.
  */
 public class ItemChoiceManager {
     private final String LOG_TAG = MainActivity.class.getSimpleName();
@@ -44,8 +45,30 @@ public class ItemChoiceManager {
             if (mAdapter != null && mAdapter.hasStableIds())
                 confirmCheckedPositionsById(mAdapter.getItemCount());
         }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            offsetCheckedPositions(positionStart, itemCount, false);
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            offsetCheckedPositions(positionStart, itemCount, true);
+        }
     };
 
+    /**
+     * Adapters that can map a stable ID straight to its position implement this, which lets us
+     * restore checked items after a data set change without searching for them.
+     */
+    public interface ItemIdPositionLookup {
+        /**
+         * @return the position of the item with the given stable ID, or
+         * RecyclerView.NO_POSITION if it is no longer in the adapter
+         */
+        int getPositionForItemId(long id);
+    }
+
     private ItemChoiceManager() {
     }
 
@@ -53,6 +76,7 @@ public class ItemChoiceManager {
 
     public ItemChoiceManager(RecyclerView.Adapter adapter) {
         mAdapter = adapter;
+        mAdapter.registerAdapterDataObserver(mAdapterDataObserver);
     }
 
     /**
@@ -162,6 +186,18 @@ public class ItemChoiceManager {
             final long id = mCheckedIdStates.keyAt(checkedIndex);
             final int lastPos = mCheckedIdStates.valueAt(checkedIndex);
 
+            if (mAdapter instanceof ItemIdPositionLookup) {
+                final int position = ((ItemIdPositionLookup) mAdapter).getPositionForItemId(id);
+                if (position == RecyclerView.NO_POSITION) {
+                    mCheckedIdStates.delete(id);
+                    checkedIndex--;
+                } else {
+                    mCheckStates.put(position, true);
+                    mCheckedIdStates.setValueAt(checkedIndex, position);
+                }
+                continue;
+            }
+
             final long lastPosId = mAdapter.getItemId(lastPos);
             if (id != lastPosId) {
                 // Look around to see if the ID is nearby. If not, uncheck it.
@@ -188,6 +224,40 @@ public class ItemChoiceManager {
         }
     }
 
+    /**
+     * Moves the checked positions along with an item level insert or remove, so that the
+     * selection follows its row without having to search for it afterwards.
+     */
+    void offsetCheckedPositions(int positionStart, int itemCount, boolean removed) {
+        if (mCheckStates.size() == 0) return;
+
+        final int removedEnd = positionStart + itemCount;
+        final int offset = removed ? -itemCount : itemCount;
+        SparseBooleanArray checkStates = new SparseBooleanArray(mCheckStates.size());
+        for (int i = 0; i < mCheckStates.size(); i++) {
+            final int position = mCheckStates.keyAt(i);
+            if (position < positionStart) {
+                checkStates.put(position, mCheckStates.valueAt(i));
+            } else if (!removed || position >= removedEnd) {
+                checkStates.put(position + offset, mCheckStates.valueAt(i));
+            }
+        }
+        mCheckStates = checkStates;
+
+        for (int checkedIndex = 0; checkedIndex < mCheckedIdStates.size(); checkedIndex++) {
+            final int lastPos = mCheckedIdStates.valueAt(checkedIndex);
+            if (lastPos < positionStart) {
+                continue;
+            }
+            if (removed && lastPos < removedEnd) {
+                mCheckedIdStates.removeAt(checkedIndex);
+                checkedIndex--;
+            } else {
+                mCheckedIdStates.setValueAt(checkedIndex, lastPos + offset);
+            }
+        }
+    }
+
     public void onBindViewHolder(RecyclerView.ViewHolder vh, int position) {
         boolean checked = isItemChecked(position);
         if (vh.itemView instanceof Checkable) {
@@ -30,10 +30,15 @@ import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 
+import com.example.android.sunshine.app.art.WeatherArtCache;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.gcm.RegistrationIntentService;
+import com.example.android.sunshine.app.perf.FrameTracker;
+import com.example.android.sunshine.app.perf.MetricsOverlay;
+import com.example.android.sunshine.app.perf.StartupTrace;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 import com.example.android.sunshine.app.sync.SunshineSyncWearService;
+import com.example.android.sunshine.app.sync.WearableSession;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GoogleApiAvailability;
 
@@ -46,14 +51,25 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
 
     private boolean mTwoPane;
     private String mLocation;
+    // True while initialization is being held back until the first forecast frame is drawn
+    private boolean mStartupWorkPending;
+    private boolean mHoldingWearSession;
+    private MetricsOverlay mMetricsOverlay;
+    // Frame timing for the transition that follows picking a day
+    private FrameTracker mSelectionFrames;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        boolean deferStartupWork = getResources().getBoolean(R.bool.defer_startup_work);
+        StartupTrace.beginLaunch(deferStartupWork);
+        StartupTrace.beginSection(StartupTrace.SECTION_ON_CREATE);
         super.onCreate(savedInstanceState);
         mLocation = Utility.getPreferredLocation(this);
         Uri contentUri = getIntent() != null ? getIntent().getData() : null;
 
+        StartupTrace.beginSection(StartupTrace.SECTION_CONTENT_VIEW);
         setContentView(R.layout.activity_main);
+        StartupTrace.endSection(StartupTrace.SECTION_CONTENT_VIEW);
         Toolbar toolbar = (Toolbar)findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
         getSupportActionBar().setDisplayShowTitleEnabled(false);
@@ -81,6 +97,8 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
             mTwoPane = false;
             getSupportActionBar().setElevation(0f);
         }
+        mSelectionFrames = new FrameTracker(this, mTwoPane
+                ? FrameTracker.SCENARIO_TWO_PANE_SELECT : FrameTracker.SCENARIO_DETAIL_OPEN);
 
         ForecastFragment forecastFragment =  ((ForecastFragment)getSupportFragmentManager()
                 .findFragmentById(R.id.fragment_forecast));
@@ -90,12 +108,32 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
                     WeatherContract.WeatherEntry.getDateFromUri(contentUri));
         }
 
+        if (deferStartupWork) {
+            // None of this is needed to show the forecast, so it waits for onForecastShown
+            mStartupWorkPending = true;
+        } else {
+            runStartupWork();
+        }
+        StartupTrace.endSection(StartupTrace.SECTION_ON_CREATE);
+    }
+
+    /**
+     * Initialization that isn't needed to draw the forecast: making sure the sync account
+     * exists, checking Play Services for GCM and pushing the current weather to the wearable.
+     */
+    private void runStartupWork() {
+        StartupTrace.beginSection(StartupTrace.SECTION_SYNC_INIT);
         SunshineSyncAdapter.initializeSyncAdapter(this);
+        StartupTrace.endSection(StartupTrace.SECTION_SYNC_INIT);
+
+        // Load the selected art pack into memory (downloading it the first time)
+        WeatherArtCache.getInstance(this).prefetch();
 
         // If Google Play Services is up to date, we'll want to register GCM. If it is not, we'll
         // skip the registration and this device will not receive any downstream messages from
         // our fake server. Because weather alerts are not a core feature of the app, this should
         // not affect the behavior of the app, from a user perspective.
+        StartupTrace.beginSection(StartupTrace.SECTION_PLAY_SERVICES);
         if (checkPlayServices()) {
             // Because this is the initial creation of the app, we'll want to be certain we have
             // a token. If we do not, then we will start the IntentService that will register this
@@ -108,12 +146,28 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
                 startService(intent);
             }
         }
+        StartupTrace.endSection(StartupTrace.SECTION_PLAY_SERVICES);
+    }
+
+    private void startWearSync() {
+        StartupTrace.beginSection(StartupTrace.SECTION_WEAR_SYNC);
+        // Keep the wearable connection warm while we're in the foreground
+        if (!mHoldingWearSession) {
+            WearableSession.getInstance(this).acquire();
+            mHoldingWearSession = true;
+        }
+        Intent msgIntent = new Intent(this, SunshineSyncWearService.class);
+        startService(msgIntent);
+        StartupTrace.endSection(StartupTrace.SECTION_WEAR_SYNC);
     }
 
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu; this adds items to the action bar if it is present.
         getMenuInflater().inflate(R.menu.main, menu);
+        menu.findItem(R.id.action_metrics_overlay)
+                .setVisible(BuildConfig.DEBUG)
+                .setChecked(MetricsOverlay.isEnabled(this));
         return true;
     }
 
@@ -129,6 +183,13 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
             startActivity(new Intent(this, SettingsActivity.class));
             return true;
         }
+        if (id == R.id.action_metrics_overlay) {
+            boolean enabled = !item.isChecked();
+            item.setChecked(enabled);
+            MetricsOverlay.setEnabled(this, enabled);
+            showMetricsOverlay(enabled);
+            return true;
+        }
 
         return super.onOptionsItemSelected(item);
     }
@@ -136,8 +197,38 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
     @Override
     protected void onStart() {
         super.onStart();
-        Intent msgIntent = new Intent(this, SunshineSyncWearService.class);
-        startService(msgIntent);
+        if (!mStartupWorkPending) {
+            startWearSync();
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        if (mHoldingWearSession) {
+            WearableSession.getInstance(this).release();
+            mHoldingWearSession = false;
+        }
+        super.onStop();
+    }
+
+    @Override
+    public void onForecastShown() {
+        StartupTrace.mark(StartupTrace.MARK_FIRST_FRAME);
+        if (mStartupWorkPending) {
+            mStartupWorkPending = false;
+            // onForecastShown is called from onPreDraw; posting lets the frame go out first
+            getWindow().getDecorView().post(new Runnable() {
+                @Override
+                public void run() {
+                    if (isFinishing()) return;
+                    runStartupWork();
+                    startWearSync();
+                    StartupTrace.finishLaunch(MainActivity.this);
+                }
+            });
+        } else {
+            StartupTrace.finishLaunch(this);
+        }
     }
 
     @Override
@@ -156,10 +247,29 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
             }
             mLocation = location;
         }
+        showMetricsOverlay(MetricsOverlay.isEnabled(this));
+    }
+
+    @Override
+    protected void onPause() {
+        showMetricsOverlay(false);
+        super.onPause();
+    }
+
+    private void showMetricsOverlay(boolean show) {
+        if (show) {
+            if (mMetricsOverlay == null) {
+                mMetricsOverlay = new MetricsOverlay(this);
+            }
+            mMetricsOverlay.show();
+        } else if (mMetricsOverlay != null) {
+            mMetricsOverlay.hide();
+        }
     }
 
     @Override
     public void onItemSelected(Uri contentUri, ForecastAdapter.ForecastAdapterViewHolder vh) {
+        mSelectionFrames.startFor(FrameTracker.TRANSITION_CAPTURE_MS);
         if (mTwoPane) {
             // In two-pane mode, show the detail view in this activity by
             // adding or replacing the detail fragment using a
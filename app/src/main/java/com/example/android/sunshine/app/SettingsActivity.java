@@ -29,6 +29,8 @@ import android.text.TextUtils;
 import android.util.Log;
 import android.view.View;
 import android.widget.ImageView;
+import com.example.android.sunshine.app.art.WeatherArtCache;
+import com.example.android.sunshine.app.data.LocationCache;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 import com.google.android.gms.location.places.Place;
@@ -155,19 +157,35 @@ public class SettingsActivity extends PreferenceActivity
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
         if ( key.equals(getString(R.string.pref_location_key)) ) {
             // we've changed the location
-            // Wipe out any potential PlacePicker latlng values so that we can use this text entry.
-            SharedPreferences.Editor editor = sharedPreferences.edit();
-            editor.remove(getString(R.string.pref_location_latitude));
-            editor.remove(getString(R.string.pref_location_longitude));
-            editor.commit();
+            LocationCache.Entry cached = LocationCache.getInstance(this)
+                    .resolve(Utility.getPreferredLocation(this));
+            if (cached != null && cached.isPickedPlace()) {
+                // A place picked before, typed in again: sync by its coordinates as then
+                StateStore.setLocationCoordinates(this, (float) cached.latitude,
+                        (float) cached.longitude);
+            } else {
+                // Wipe out any potential PlacePicker latlng values so that we can use this
+                // text entry.
+                StateStore.clearLocationCoordinates(this);
+            }
 
             // Remove attributions for our any PlacePicker locations.
             if (mAttribution != null) {
                 mAttribution.setVisibility(View.GONE);
             }
 
-            Utility.resetLocationStatus(this);
-            SunshineSyncAdapter.syncImmediately(this);
+            if (cached == null) {
+                // Only the sync will tell whether the server knows the place
+                Utility.resetLocationStatus(this);
+            } else if (!cached.valid) {
+                // The server didn't know it last time, no need to ask again
+                StateStore.setLocationStatus(this, SunshineSyncAdapter.LOCATION_STATUS_INVALID);
+                return;
+            } else {
+                StateStore.setLocationStatus(this, SunshineSyncAdapter.LOCATION_STATUS_OK);
+            }
+            SunshineSyncAdapter.syncImmediately(this,
+                    WeatherContract.SyncHistoryEntry.TRIGGER_LOCATION_CHANGE);
         } else if ( key.equals(getString(R.string.pref_units_key)) ) {
             // units have changed. update lists of weather entries accordingly
             getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
@@ -178,6 +196,8 @@ public class SettingsActivity extends PreferenceActivity
         } else if ( key.equals(getString(R.string.pref_art_pack_key)) ) {
             // art pack have changed. update lists of weather entries accordingly
             getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            // and get the new pack ready at the sizes we draw it at
+            WeatherArtCache.getInstance(this).prefetch();
         }
     }
 
@@ -203,19 +223,13 @@ public class SettingsActivity extends PreferenceActivity
                     address = String.format("(%.2f, %.2f)",latLong.latitude, latLong.longitude);
                 }
 
-                SharedPreferences sharedPreferences =
-                        PreferenceManager.getDefaultSharedPreferences(this);
-                SharedPreferences.Editor editor = sharedPreferences.edit();
-                editor.putString(getString(R.string.pref_location_key), address);
-
                 // Also store the latitude and longitude so that we can use these to get a precise
                 // result from our weather service. We cannot expect the weather service to
                 // understand addresses that Google formats.
-                editor.putFloat(getString(R.string.pref_location_latitude),
-                        (float) latLong.latitude);
-                editor.putFloat(getString(R.string.pref_location_longitude),
+                StateStore.setLocation(this, address, (float) latLong.latitude,
                         (float) latLong.longitude);
-                editor.commit();
+                LocationCache.getInstance(this).putPlace(address, latLong.latitude,
+                        latLong.longitude);
 
                 // Tell the SyncAdapter that we've changed the location, so that we can update
                 // our UI with new values. We need to do this manually because we are responding
@@ -235,7 +249,8 @@ public class SettingsActivity extends PreferenceActivity
                 }
 
                 Utility.resetLocationStatus(this);
-                SunshineSyncAdapter.syncImmediately(this);
+                SunshineSyncAdapter.syncImmediately(this,
+                        WeatherContract.SyncHistoryEntry.TRIGGER_LOCATION_CHANGE);
             }
         } else {
             super.onActivityResult(requestCode, resultCode, data);
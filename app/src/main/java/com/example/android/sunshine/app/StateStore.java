@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+
+/**
+ * Writes the sync and location state kept in the default shared preferences: the status of
+ * the last sync, the coordinates picked for the location and when the weather was last
+ * notified.  Reads stay in {@link Utility}.
+ *
+ * Nothing here waits for the disk.  A write lands in memory, and reaches
+ * OnSharedPreferenceChangeListeners such as ForecastFragment's, straight away; the file is
+ * written in the background with apply().  The framework waits for outstanding applies when
+ * an activity pauses or a service stops, so they survive the process going away after that.
+ * Writes that wouldn't change anything are skipped, so listeners only hear about real changes.
+ */
+public class StateStore {
+
+    public static void setLocationStatus(Context context,
+                                         @SunshineSyncAdapter.LocationStatus int status) {
+        String key = context.getString(R.string.pref_location_status_key);
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        if (prefs.contains(key) && prefs.getInt(key, status) == status) {
+            return;
+        }
+        prefs.edit().putInt(key, status).apply();
+    }
+
+    /**
+     * Sets the location to a picked place, along with its coordinates, in one write.
+     */
+    public static void setLocation(Context context, String location, float latitude,
+                                   float longitude) {
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .putString(context.getString(R.string.pref_location_key), location)
+                .putFloat(context.getString(R.string.pref_location_latitude), latitude)
+                .putFloat(context.getString(R.string.pref_location_longitude), longitude)
+                .apply();
+    }
+
+    /**
+     * Sets the coordinates to sync the current location by.
+     */
+    public static void setLocationCoordinates(Context context, float latitude, float longitude) {
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .putFloat(context.getString(R.string.pref_location_latitude), latitude)
+                .putFloat(context.getString(R.string.pref_location_longitude), longitude)
+                .apply();
+    }
+
+    /**
+     * Forgets the coordinates of a picked place, once the location has been typed in instead.
+     */
+    public static void clearLocationCoordinates(Context context) {
+        if (!Utility.isLocationLatLonAvailable(context)) {
+            return;
+        }
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .remove(context.getString(R.string.pref_location_latitude))
+                .remove(context.getString(R.string.pref_location_longitude))
+                .apply();
+    }
+
+    public static void setLastNotification(Context context, long timeMillis) {
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .putLong(context.getString(R.string.pref_last_notification), timeMillis)
+                .apply();
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.art;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.AsyncTask;
+import android.os.Build;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.FutureTarget;
+import com.bumptech.glide.request.target.Target;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Keeps the weather art of the selected art pack ready at the sizes the app draws it at.
+ *
+ * The first time a pack is used, {@link #prefetch()} downloads each of its images once, scales
+ * them down to every {@link #TARGET_LIST target} size and stores the results as PNGs in the
+ * cache directory.  Later prefetches just load those files into memory, so the list, detail,
+ * widget and notification code can get a bitmap of the right size without touching the
+ * network or decoding a full size image.
+ */
+public class WeatherArtCache {
+    private static final String LOG_TAG = WeatherArtCache.class.getSimpleName();
+
+    // The sizes the art is drawn at
+    // List rows and detail widget rows, both list_icon sized
+    public static final int TARGET_LIST = 0;
+    // The "today" list row and the detail pane, both today_icon sized
+    public static final int TARGET_TODAY = 1;
+    // The large icon of the weather notification
+    public static final int TARGET_NOTIFICATION = 2;
+    private static final int TARGET_COUNT = 3;
+
+    // Every name Utility.getArtNameForWeatherCondition can return
+    private static final String[] ART_NAMES = {
+            "clear",
+            "clouds",
+            "fog",
+            "light_clouds",
+            "light_rain",
+            "rain",
+            "snow",
+            "storm"
+    };
+
+    private static final String CACHE_DIR = "weather_art";
+    // Written last, holds the pack's URL format so we know the directory is complete
+    private static final String COMPLETE_FILE = "complete";
+
+    private static WeatherArtCache sInstance;
+
+    private final Context mContext;
+    private final int[] mTargetWidths = new int[TARGET_COUNT];
+    private final int[] mTargetHeights = new int[TARGET_COUNT];
+    private final LruCache<String, Bitmap> mMemoryCache;
+
+    private final Object mLock = new Object();
+    // The pack whose bitmaps are (being) loaded into memory
+    private String mLoadedPack;
+
+    public static synchronized WeatherArtCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WeatherArtCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    @SuppressLint("InlinedApi")
+    private WeatherArtCache(Context context) {
+        mContext = context;
+        Resources resources = context.getResources();
+        mTargetWidths[TARGET_LIST] = mTargetHeights[TARGET_LIST] =
+                resources.getDimensionPixelSize(R.dimen.list_icon);
+        mTargetWidths[TARGET_TODAY] = mTargetHeights[TARGET_TODAY] =
+                resources.getDimensionPixelSize(R.dimen.today_icon);
+        mTargetWidths[TARGET_NOTIFICATION] = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
+                : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+        mTargetHeights[TARGET_NOTIFICATION] = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
+                : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+
+        // A whole pack at every size is a few MB at most, but don't let it grow past 1/16th
+        // of the heap.
+        int maxKb = (int) (Runtime.getRuntime().maxMemory() / 1024 / 16);
+        mMemoryCache = new LruCache<String, Bitmap>(maxKb) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount() / 1024;
+            }
+        };
+    }
+
+    /**
+     * Returns the art for a condition if it is already in memory.  This never does any I/O, so
+     * it is safe to call while binding views.
+     *
+     * @param weatherId from OpenWeatherMap API response
+     * @param target one of the TARGET_ constants
+     * @return the scaled art of the selected pack, or null if it isn't loaded yet
+     */
+    public Bitmap getCachedBitmap(int weatherId, int target) {
+        String artName = Utility.getArtNameForWeatherCondition(weatherId);
+        if (artName == null) {
+            return null;
+        }
+        return mMemoryCache.get(memoryKey(Utility.getPreferredArtPack(mContext), artName, target));
+    }
+
+    /**
+     * Returns the art for a condition, reading it back from the disk cache if it isn't in
+     * memory.  Must not be called from the UI thread.
+     *
+     * @param weatherId from OpenWeatherMap API response
+     * @param target one of the TARGET_ constants
+     * @return the scaled art of the selected pack, or null if the pack hasn't been prefetched
+     */
+    public Bitmap getBitmap(int weatherId, int target) {
+        String artName = Utility.getArtNameForWeatherCondition(weatherId);
+        if (artName == null) {
+            return null;
+        }
+        String artPack = Utility.getPreferredArtPack(mContext);
+        String key = memoryKey(artPack, artName, target);
+        Bitmap bitmap = mMemoryCache.get(key);
+        if (bitmap == null) {
+            File file = getArtFile(getPackDir(artPack), artName, target);
+            if (file.exists()) {
+                bitmap = BitmapFactory.decodeFile(file.getPath());
+                if (bitmap != null) {
+                    mMemoryCache.put(key, bitmap);
+                }
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Makes sure the selected art pack is on disk and in memory, in the background.  Cheap to
+     * call repeatedly: it does nothing once the pack has been loaded.
+     */
+    public void prefetch() {
+        if (Utility.usingLocalGraphics(mContext)) {
+            // The bundled art comes from resources, nothing to do
+            return;
+        }
+        final String artPack = Utility.getPreferredArtPack(mContext);
+        synchronized (mLock) {
+            if (artPack.equals(mLoadedPack)) {
+                return;
+            }
+            mLoadedPack = artPack;
+        }
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!loadPack(artPack)) {
+                    // Let the next call try again
+                    synchronized (mLock) {
+                        if (artPack.equals(mLoadedPack)) {
+                            mLoadedPack = null;
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    private boolean loadPack(String artPack) {
+        File packDir = getPackDir(artPack);
+        boolean complete = isComplete(packDir, artPack);
+        if (!complete) {
+            deleteOtherPacks(packDir);
+            if (!packDir.exists() && !packDir.mkdirs()) {
+                Log.e(LOG_TAG, "Unable to create " + packDir);
+                return false;
+            }
+        }
+
+        for (String artName : ART_NAMES) {
+            if (!complete && !downloadArt(artPack, artName, packDir)) {
+                return false;
+            }
+            for (int target = 0; target < TARGET_COUNT; target++) {
+                Bitmap bitmap = BitmapFactory.decodeFile(
+                        getArtFile(packDir, artName, target).getPath());
+                if (bitmap == null) {
+                    return false;
+                }
+                mMemoryCache.put(memoryKey(artPack, artName, target), bitmap);
+            }
+        }
+
+        if (!complete) {
+            markComplete(packDir, artPack);
+        }
+        return true;
+    }
+
+    /**
+     * Downloads a single image once and writes it out at every target size.
+     */
+    private boolean downloadArt(String artPack, String artName, File packDir) {
+        String url = Utility.getArtUrl(artPack, artName);
+        FutureTarget<Bitmap> request = Glide.with(mContext)
+                .load(url)
+                .asBitmap()
+                .into(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL);
+        try {
+            Bitmap source = request.get();
+            for (int target = 0; target < TARGET_COUNT; target++) {
+                Bitmap scaled = scaleToFit(source, mTargetWidths[target], mTargetHeights[target]);
+                boolean written = writePng(scaled, getArtFile(packDir, artName, target));
+                scaled.recycle();
+                if (!written) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException | ExecutionException e) {
+            Log.e(LOG_TAG, "Error retrieving weather art from " + url, e);
+            return false;
+        } finally {
+            Glide.clear(request);
+        }
+    }
+
+    /**
+     * Scales a bitmap down, keeping its aspect ratio, so that it fits in the given box.  Always
+     * returns a new bitmap, since the source belongs to Glide's pool.
+     */
+    private static Bitmap scaleToFit(Bitmap source, int width, int height) {
+        float scale = Math.min(1f, Math.min((float) width / source.getWidth(),
+                (float) height / source.getHeight()));
+        int scaledWidth = Math.max(1, Math.round(source.getWidth() * scale));
+        int scaledHeight = Math.max(1, Math.round(source.getHeight() * scale));
+        if (scaledWidth == source.getWidth() && scaledHeight == source.getHeight()) {
+            return source.copy(Bitmap.Config.ARGB_8888, false);
+        }
+        return Bitmap.createScaledBitmap(source, scaledWidth, scaledHeight, true);
+    }
+
+    private static boolean writePng(Bitmap bitmap, File file) {
+        OutputStream out = null;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(file));
+            return bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Unable to write " + file, e);
+            return false;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing stream", e);
+                }
+            }
+        }
+    }
+
+    private static boolean isComplete(File packDir, String artPack) {
+        File marker = new File(packDir, COMPLETE_FILE);
+        if (!marker.exists()) {
+            return false;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(marker));
+            // The directory name is only a hash, make sure it really is this pack
+            return artPack.equals(reader.readLine());
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing stream", e);
+                }
+            }
+        }
+    }
+
+    private static void markComplete(File packDir, String artPack) {
+        FileWriter writer = null;
+        try {
+            writer = new FileWriter(new File(packDir, COMPLETE_FILE));
+            writer.write(artPack);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Unable to mark " + packDir + " complete", e);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing stream", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Only the selected pack is kept on disk.  Switching back to an older pack downloads it again.
+     */
+    private void deleteOtherPacks(File packDir) {
+        File[] packs = new File(mContext.getCacheDir(), CACHE_DIR).listFiles();
+        if (packs == null) {
+            return;
+        }
+        for (File pack : packs) {
+            if (pack.equals(packDir)) {
+                continue;
+            }
+            File[] files = pack.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            pack.delete();
+        }
+    }
+
+    private File getPackDir(String artPack) {
+        return new File(new File(mContext.getCacheDir(), CACHE_DIR),
+                Integer.toHexString(artPack.hashCode()));
+    }
+
+    private File getArtFile(File packDir, String artName, int target) {
+        return new File(packDir, artName + "_" + mTargetWidths[target] + "x"
+                + mTargetHeights[target] + ".png");
+    }
+
+    private static String memoryKey(String artPack, String artName, int target) {
+        return artPack + "|" + artName + "|" + target;
+    }
+}
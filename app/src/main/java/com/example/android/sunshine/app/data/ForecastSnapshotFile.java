@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * A small binary copy of the forecast list rows, written after each sync so that a cold start
+ * can draw the list straight away instead of waiting for weather.db to be opened and queried.
+ *
+ * Layout (big endian):
+ * <pre>
+ *   int    magic ("SUNF")
+ *   int    version
+ *   short  location setting length, followed by that many UTF-8 bytes
+ *   double latitude
+ *   double longitude
+ *   int    row count
+ *   rows:  long date, int weather id, double max temp, double min temp
+ * </pre>
+ * Readers reject files with an unknown magic or version, so bumping {@link #VERSION} is all it
+ * takes to change the layout.
+ */
+public class ForecastSnapshotFile {
+    private static final String LOG_TAG = ForecastSnapshotFile.class.getSimpleName();
+
+    static final String FILE_NAME = "forecast_snapshot.bin";
+    private static final int MAGIC = 0x53554e46;
+    public static final int VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String[] SNAPSHOT_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+    };
+    // these indices must match the projection
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_WEATHER_ID = 1;
+    private static final int INDEX_MAX_TEMP = 2;
+    private static final int INDEX_MIN_TEMP = 3;
+    private static final int INDEX_COORD_LAT = 4;
+    private static final int INDEX_COORD_LONG = 5;
+
+    /**
+     * The rows read back from a snapshot file.
+     */
+    public static class Rows {
+        public final String locationSetting;
+        public final double latitude;
+        public final double longitude;
+        public final long[] dates;
+        public final int[] weatherIds;
+        public final double[] highs;
+        public final double[] lows;
+
+        Rows(String locationSetting, double latitude, double longitude, int count) {
+            this.locationSetting = locationSetting;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            dates = new long[count];
+            weatherIds = new int[count];
+            highs = new double[count];
+            lows = new double[count];
+        }
+
+        public int size() {
+            return dates.length;
+        }
+    }
+
+    private ForecastSnapshotFile() {
+    }
+
+    static File getFile(Context context) {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    /**
+     * Queries the forecast for a location from today on and writes it out as the snapshot.
+     * This hits the provider, so it must not be called from the UI thread.
+     *
+     * @param context Context used to reach the provider and the files directory
+     * @param locationSetting The location the forecast list is showing
+     */
+    public static void write(Context context, String locationSetting) {
+        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                locationSetting, System.currentTimeMillis());
+        Cursor cursor = context.getContentResolver().query(weatherForLocationUri,
+                SNAPSHOT_COLUMNS, null, null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return;
+        }
+
+        File file = getFile(context);
+        File tmpFile = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            byte[] location = locationSetting.getBytes(UTF_8);
+            double latitude = 0;
+            double longitude = 0;
+            if (cursor.moveToFirst()) {
+                latitude = cursor.getDouble(INDEX_COORD_LAT);
+                longitude = cursor.getDouble(INDEX_COORD_LONG);
+            }
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeShort(location.length);
+            out.write(location);
+            out.writeDouble(latitude);
+            out.writeDouble(longitude);
+            out.writeInt(cursor.getCount());
+            cursor.moveToPosition(-1);
+            while (cursor.moveToNext()) {
+                out.writeLong(cursor.getLong(INDEX_DATE));
+                out.writeInt(cursor.getInt(INDEX_WEATHER_ID));
+                out.writeDouble(cursor.getDouble(INDEX_MAX_TEMP));
+                out.writeDouble(cursor.getDouble(INDEX_MIN_TEMP));
+            }
+            out.close();
+            out = null;
+            // Readers only ever see a complete file
+            if (!tmpFile.renameTo(file)) {
+                Log.e(LOG_TAG, "Unable to replace forecast snapshot");
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Unable to write forecast snapshot", e);
+        } finally {
+            cursor.close();
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing stream", e);
+                }
+            }
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * Memory-maps the snapshot and reads back the rows dated today or later.
+     *
+     * @param context Context used to reach the files directory
+     * @return the rows, or null if there is no usable snapshot
+     */
+    public static Rows read(Context context) {
+        File file = getFile(context);
+        if (!file.exists()) {
+            return null;
+        }
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            FileChannel channel = in.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            byte[] location = new byte[buffer.getShort() & 0xffff];
+            buffer.get(location);
+            double latitude = buffer.getDouble();
+            double longitude = buffer.getDouble();
+            int count = buffer.getInt();
+            if (count < 0) {
+                return null;
+            }
+
+            // Skip the days that have already gone by
+            long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+            long[] dates = new long[count];
+            int[] weatherIds = new int[count];
+            double[] highs = new double[count];
+            double[] lows = new double[count];
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                long date = buffer.getLong();
+                int weatherId = buffer.getInt();
+                double high = buffer.getDouble();
+                double low = buffer.getDouble();
+                if (date >= today) {
+                    dates[kept] = date;
+                    weatherIds[kept] = weatherId;
+                    highs[kept] = high;
+                    lows[kept] = low;
+                    kept++;
+                }
+            }
+
+            Rows rows = new Rows(new String(location, UTF_8), latitude, longitude, kept);
+            System.arraycopy(dates, 0, rows.dates, 0, kept);
+            System.arraycopy(weatherIds, 0, rows.weatherIds, 0, kept);
+            System.arraycopy(highs, 0, rows.highs, 0, kept);
+            System.arraycopy(lows, 0, rows.lows, 0, kept);
+            return rows;
+        } catch (IOException | BufferUnderflowException e) {
+            Log.w(LOG_TAG, "Ignoring unreadable forecast snapshot", e);
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing stream", e);
+                }
+            }
+        }
+    }
+}
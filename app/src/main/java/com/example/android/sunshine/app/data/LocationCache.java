@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Remembers what location settings turned out to be, so that a location typed in again, or
+ * typed slightly differently, is known without asking OpenWeatherMap.  Syncs add what the
+ * server made of each query (its city id, name and coordinates, or that it didn't know the
+ * place), and so do Place Picker results.
+ *
+ * Queries are normalized, so case, punctuation and spacing don't matter ("Mountain View, CA"
+ * is "mountain view ca").  A sorted index of the keys also finds a cached place from a query
+ * that is the first whole words of its key.  At most {@link #MAX_ENTRIES} keys are kept, the
+ * least recently used going first, in a small preferences file of their own.  Lookups only
+ * reorder them in memory; the order is saved along with the next change.
+ *
+ * That the server didn't know a place is only trusted for {@link #INVALID_TTL_MS}, since it
+ * may have been down or not know a new city yet.
+ */
+public class LocationCache {
+    private static final String LOG_TAG = LocationCache.class.getSimpleName();
+
+    static final int MAX_ENTRIES = 100;
+    static final long INVALID_TTL_MS = 60 * 60 * 1000;
+
+    private static final String CACHE_PREFS = "location_cache";
+    private static final String ENTRIES_KEY = "entries";
+
+    private static final String JSON_KEY = "key";
+    private static final String JSON_QUERY = "query";
+    private static final String JSON_VALID = "valid";
+    private static final String JSON_CITY_ID = "city_id";
+    private static final String JSON_CITY_NAME = "city_name";
+    private static final String JSON_LATITUDE = "lat";
+    private static final String JSON_LONGITUDE = "lon";
+    private static final String JSON_CHECKED_AT = "checked_at";
+
+    private static LocationCache sInstance;
+
+    /**
+     * What a location setting resolved to.
+     */
+    public static class Entry {
+        // The location setting as it was entered
+        public final String query;
+        // False if the server didn't know the place, in which case nothing else is set
+        public final boolean valid;
+        // OWM's city id, or 0 for a place picked on the map
+        public final long cityId;
+        public final String cityName;
+        public final double latitude;
+        public final double longitude;
+        // When the server was asked, wall clock
+        final long checkedAtMs;
+
+        Entry(String query, boolean valid, long cityId, String cityName, double latitude,
+              double longitude, long checkedAtMs) {
+            this.query = query;
+            this.valid = valid;
+            this.cityId = cityId;
+            this.cityName = cityName;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.checkedAtMs = checkedAtMs;
+        }
+
+        /**
+         * @return true for a place picked on the map, whose coordinates are what to sync by
+         */
+        public boolean isPickedPlace() {
+            return valid && cityId == 0;
+        }
+    }
+
+    private final SharedPreferences mPrefs;
+    // In access order, so the first key is the least recently used
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    // The same keys sorted, for prefix lookups
+    private final TreeMap<String, Entry> mIndex = new TreeMap<>();
+
+    public static synchronized LocationCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new LocationCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    LocationCache(Context context) {
+        mPrefs = context.getSharedPreferences(CACHE_PREFS, Context.MODE_PRIVATE);
+        load();
+    }
+
+    /**
+     * @return what the location setting resolved to before, or null if it isn't known or the
+     * server didn't know it more than {@link #INVALID_TTL_MS} ago
+     */
+    public synchronized Entry resolve(String query) {
+        String key = normalize(query);
+        if (key.length() == 0) {
+            return null;
+        }
+        Entry entry = mEntries.get(key);
+        if (entry != null && !entry.valid
+                && System.currentTimeMillis() - entry.checkedAtMs > INVALID_TTL_MS) {
+            // Worth asking the server again, the next sync records the answer
+            mEntries.remove(key);
+            mIndex.remove(key);
+            return null;
+        }
+        if (entry == null) {
+            entry = resolvePrefix(key);
+        }
+        return entry;
+    }
+
+    /**
+     * Records the city the server returned for a location setting.  The city's own name is
+     * cached too, so that typing it in later resolves as well.
+     */
+    public synchronized void putCity(String query, long cityId, String cityName,
+                                     double latitude, double longitude) {
+        Entry entry = new Entry(query, true, cityId, cityName, latitude, longitude,
+                System.currentTimeMillis());
+        put(normalize(query), entry);
+        put(normalize(cityName), entry);
+        save();
+    }
+
+    /**
+     * Records a place picked on the map, known by its address.
+     */
+    public synchronized void putPlace(String address, double latitude, double longitude) {
+        put(normalize(address), new Entry(address, true, 0, address, latitude, longitude,
+                System.currentTimeMillis()));
+        save();
+    }
+
+    /**
+     * Records that the server didn't know a location setting.
+     */
+    public void putInvalid(String query) {
+        putInvalid(query, System.currentTimeMillis());
+    }
+
+    synchronized void putInvalid(String query, long checkedAtMs) {
+        put(normalize(query), new Entry(query, false, 0, null, 0, 0, checkedAtMs));
+        save();
+    }
+
+    synchronized int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Lower case letters and digits, with single spaces between words.
+     */
+    static String normalize(String query) {
+        StringBuilder key = new StringBuilder(query.length());
+        boolean space = false;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (space && key.length() > 0) {
+                    key.append(' ');
+                }
+                key.append(c);
+                space = false;
+            } else {
+                space = true;
+            }
+        }
+        return key.toString().toLowerCase(Locale.US);
+    }
+
+    /*
+        A query that is the first words of cached keys, e.g. "mountain view" for
+        "mountain view ca", resolves if all of them are the same known city.
+     */
+    private Entry resolvePrefix(String key) {
+        String prefix = key + ' ';
+        String foundKey = null;
+        Entry found = null;
+        for (Map.Entry<String, Entry> candidate
+                : mIndex.subMap(prefix, prefix + Character.MAX_VALUE).entrySet()) {
+            Entry entry = candidate.getValue();
+            if (!entry.valid || entry.cityId == 0) {
+                return null;
+            }
+            if (found == null) {
+                foundKey = candidate.getKey();
+                found = entry;
+            } else if (found.cityId != entry.cityId) {
+                return null;
+            }
+        }
+        if (found != null) {
+            // Counts as a use of the key that matched, for the LRU order
+            mEntries.get(foundKey);
+        }
+        return found;
+    }
+
+    private void put(String key, Entry entry) {
+        if (key.length() == 0) {
+            return;
+        }
+        mEntries.put(key, entry);
+        mIndex.put(key, entry);
+        Iterator<String> oldest = mEntries.keySet().iterator();
+        while (mEntries.size() > MAX_ENTRIES) {
+            mIndex.remove(oldest.next());
+            oldest.remove();
+        }
+    }
+
+    private void load() {
+        String json = mPrefs.getString(ENTRIES_KEY, null);
+        if (json == null) {
+            return;
+        }
+        try {
+            // Saved least recently used first, so putting them back restores the order
+            JSONArray entries = new JSONArray(json);
+            for (int i = 0; i < entries.length(); i++) {
+                JSONObject entry = entries.getJSONObject(i);
+                put(entry.getString(JSON_KEY), new Entry(
+                        entry.getString(JSON_QUERY),
+                        entry.getBoolean(JSON_VALID),
+                        entry.optLong(JSON_CITY_ID),
+                        entry.optString(JSON_CITY_NAME, null),
+                        entry.optDouble(JSON_LATITUDE, 0),
+                        entry.optDouble(JSON_LONGITUDE, 0),
+                        entry.optLong(JSON_CHECKED_AT, 0)));
+            }
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, "Dropping unreadable location cache", e);
+            mEntries.clear();
+            mIndex.clear();
+        }
+    }
+
+    private void save() {
+        JSONArray entries = new JSONArray();
+        try {
+            for (Map.Entry<String, Entry> cached : mEntries.entrySet()) {
+                Entry entry = cached.getValue();
+                JSONObject json = new JSONObject()
+                        .put(JSON_KEY, cached.getKey())
+                        .put(JSON_QUERY, entry.query)
+                        .put(JSON_VALID, entry.valid)
+                        .put(JSON_CHECKED_AT, entry.checkedAtMs);
+                if (entry.valid) {
+                    json.put(JSON_CITY_ID, entry.cityId)
+                            .put(JSON_CITY_NAME, entry.cityName)
+                            .put(JSON_LATITUDE, entry.latitude)
+                            .put(JSON_LONGITUDE, entry.longitude);
+                }
+                entries.put(json);
+            }
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, "Unable to save location cache", e);
+            return;
+        }
+        mPrefs.edit().putString(ENTRIES_KEY, entries.toString()).apply();
+    }
+}
@@ -43,6 +43,7 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    public static final String PATH_SYNC_HISTORY = "sync_history";
 
     // To make it easy to query for the exact date, we normalize all dates that go into
     // the database to the start of the the Julian day at UTC.
@@ -165,4 +166,52 @@ public class WeatherContract {
                 return 0;
         }
     }
+
+    /*
+        One row per sync run, newest last, so that sync performance can be followed over time
+        on the device.  The table is append-only and the provider keeps only the most recent
+        SyncHistoryEntry.MAX_ROWS runs, e.g.:
+
+        adb shell content query --uri content://com.example.android.sunshine.app/sync_history
+     */
+    public static final class SyncHistoryEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_SYNC_HISTORY).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/"
+                        + PATH_SYNC_HISTORY;
+
+        public static final String TABLE_NAME = "sync_history";
+
+        // The number of runs kept; older rows are dropped as new ones are added
+        public static final int MAX_ROWS = 500;
+
+        // When the run started and ended, in milliseconds since the epoch
+        public static final String COLUMN_START_TIME = "start_time";
+        public static final String COLUMN_END_TIME = "end_time";
+
+        // The size of the server's response body
+        public static final String COLUMN_BYTES_FETCHED = "bytes_fetched";
+
+        // Weather rows that were new, that replaced a stored day, and that were deleted as old
+        public static final String COLUMN_ROWS_INSERTED = "rows_inserted";
+        public static final String COLUMN_ROWS_UPDATED = "rows_updated";
+        public static final String COLUMN_ROWS_DELETED = "rows_deleted";
+
+        // The SunshineSyncAdapter.LocationStatus the run ended with
+        public static final String COLUMN_STATUS = "status";
+
+        // The location setting that was synced
+        public static final String COLUMN_LOCATION_SETTING = "location_setting";
+
+        // What asked for the run, one of the TRIGGER_ values
+        public static final String COLUMN_TRIGGER = "trigger";
+
+        public static final String TRIGGER_PERIODIC = "periodic";
+        public static final String TRIGGER_MANUAL = "manual";
+        public static final String TRIGGER_GCM = "gcm";
+        public static final String TRIGGER_LOCATION_CHANGE = "location_change";
+    }
 }
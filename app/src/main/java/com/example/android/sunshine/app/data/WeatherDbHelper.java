@@ -20,6 +20,7 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.SyncHistoryEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
 /**
@@ -28,9 +29,9 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
     // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    private static final int DATABASE_VERSION = 3;
 
-    static final String DATABASE_NAME = "weather.db";
+    public static final String DATABASE_NAME = "weather.db";
 
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
@@ -79,8 +80,24 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 " UNIQUE (" + WeatherEntry.COLUMN_DATE + ", " +
                 WeatherEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);";
 
+        // One row per sync run.  AUTOINCREMENT keeps the ids in run order, which is what the
+        // provider trims the oldest runs by.
+        final String SQL_CREATE_SYNC_HISTORY_TABLE = "CREATE TABLE " +
+                SyncHistoryEntry.TABLE_NAME + " (" +
+                SyncHistoryEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                SyncHistoryEntry.COLUMN_START_TIME + " INTEGER NOT NULL, " +
+                SyncHistoryEntry.COLUMN_END_TIME + " INTEGER NOT NULL, " +
+                SyncHistoryEntry.COLUMN_BYTES_FETCHED + " INTEGER NOT NULL, " +
+                SyncHistoryEntry.COLUMN_ROWS_INSERTED + " INTEGER NOT NULL, " +
+                SyncHistoryEntry.COLUMN_ROWS_UPDATED + " INTEGER NOT NULL, " +
+                SyncHistoryEntry.COLUMN_ROWS_DELETED + " INTEGER NOT NULL, " +
+                SyncHistoryEntry.COLUMN_STATUS + " INTEGER NOT NULL, " +
+                SyncHistoryEntry.COLUMN_LOCATION_SETTING + " TEXT NOT NULL, " +
+                SyncHistoryEntry.COLUMN_TRIGGER + " TEXT NOT NULL);";
+
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_SYNC_HISTORY_TABLE);
     }
 
     @Override
@@ -93,6 +110,7 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
         // should be your top priority before modifying this method.
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + SyncHistoryEntry.TABLE_NAME);
         onCreate(sqLiteDatabase);
     }
 }
@@ -29,12 +29,18 @@ import android.widget.Toast;
 
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastSnapshotFile;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.FanOutService;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 import com.google.android.gms.gcm.GcmListenerService;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
-public class MyGcmListenerService extends GcmListenerService {
+public class MyGcmListenerService extends GcmListenerService
+        implements WeatherPushHandler.Callbacks {
 
     private static final String TAG = "MyGcmListenerService";
 
@@ -62,14 +68,19 @@ public class MyGcmListenerService extends GcmListenerService {
             }
             // Not a bad idea to check that the message is coming from your server.
             if ((senderId).equals(from)) {
+                // Bring the pushed location up to date first
+                new WeatherPushHandler(this, this).onMessage(data);
+
                 // Process message and then post a notification of the received message.
                 try {
                     JSONObject jsonObject = new JSONObject(data.getString(EXTRA_DATA));
-                    String weather = jsonObject.getString(EXTRA_WEATHER);
-                    String location = jsonObject.getString(EXTRA_LOCATION);
-                    String alert =
-                            String.format(getString(R.string.gcm_weather_alert), weather, location);
-                    sendNotification(alert);
+                    if (jsonObject.has(EXTRA_WEATHER)) {
+                        String weather = jsonObject.getString(EXTRA_WEATHER);
+                        String location = jsonObject.getString(EXTRA_LOCATION);
+                        String alert = String.format(getString(R.string.gcm_weather_alert),
+                                weather, location);
+                        sendNotification(alert);
+                    }
                 } catch (JSONException e) {
                     // JSON parsing failed, so we just let this message go, since GCM is not one
                     // of our critical features.
@@ -79,6 +90,21 @@ public class MyGcmListenerService extends GcmListenerService {
         }
     }
 
+    @Override  // WeatherPushHandler.Callbacks
+    public void requestExpeditedSync() {
+        SunshineSyncAdapter.syncImmediately(this, WeatherContract.SyncHistoryEntry.TRIGGER_GCM);
+    }
+
+    @Override  // WeatherPushHandler.Callbacks
+    public void onWeatherChanged() {
+        // The same as what a sync does once it has written new data
+        ForecastSnapshotFile.write(this, Utility.getPreferredLocation(this));
+        sendBroadcast(new Intent(SunshineSyncAdapter.ACTION_DATA_UPDATED)
+                .setPackage(getPackageName()));
+        FanOutService.enqueue(this, FanOutService.TASK_NOTIFICATION
+                | FanOutService.TASK_WEAR | FanOutService.TASK_MUZEI);
+    }
+
     /**
      *  Put the message into a notification and post it.
      *  This is just one simple example of what you might choose to do with a GCM message.
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.util.Log;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Brings the forecast of one location up to date from a GCM message, instead of waiting for
+ * the next periodic sync.  The message's "data" JSON names the location and then either
+ * carries the changed values:
+ * <pre>
+ *   {"location": "94043",
+ *    "days": [{"date": 1419033600000, "weather_id": 500, "max": 12.5, "short_desc": "Rain"}]}
+ * </pre>
+ * which are written straight to the provider (any of the weather columns may be given, only
+ * those are changed), or just says that the server has newer data:
+ * <pre>
+ *   {"location": "94043", "dirty": true}
+ * </pre>
+ * which asks for an expedited sync.  Only the preferred location is ever synced; values for a
+ * day we don't have yet can't be applied on their own, so they are treated as a dirty hint.
+ * A malformed day is skipped on its own, without holding up the other days of the message.
+ */
+public class WeatherPushHandler {
+    private static final String LOG_TAG = WeatherPushHandler.class.getSimpleName();
+
+    static final String EXTRA_DATA = "data";
+    static final String KEY_LOCATION = "location";
+    static final String KEY_DIRTY = "dirty";
+    static final String KEY_DAYS = "days";
+
+    // The columns a pushed day may change
+    private static final String[] PUSHABLE_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES
+    };
+
+    private static final String WEATHER_ROW_SELECTION =
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND "
+                    + WeatherContract.WeatherEntry.COLUMN_DATE + " = ?";
+
+    /**
+     * What the handler asks of the rest of the app.
+     */
+    public interface Callbacks {
+        /**
+         * Fetch the preferred location's forecast from the server now.
+         */
+        void requestExpeditedSync();
+
+        /**
+         * The preferred location's forecast has been changed in the provider.
+         */
+        void onWeatherChanged();
+    }
+
+    private final Context mContext;
+    private final Callbacks mCallbacks;
+
+    public WeatherPushHandler(Context context, Callbacks callbacks) {
+        mContext = context;
+        mCallbacks = callbacks;
+    }
+
+    /**
+     * Handles a GCM message bundle.  Messages without a location, or that aren't weather
+     * updates, are ignored.
+     */
+    public void onMessage(Bundle message) {
+        String data = message.getString(EXTRA_DATA);
+        if (data == null) {
+            return;
+        }
+        try {
+            JSONObject json = new JSONObject(data);
+            String location = json.optString(KEY_LOCATION, null);
+            if (location == null) {
+                return;
+            }
+            boolean preferred = location.equals(Utility.getPreferredLocation(mContext));
+            boolean dirty = json.optBoolean(KEY_DIRTY, false);
+
+            JSONArray pushedDays = json.optJSONArray(KEY_DAYS);
+            List<ContentValues> days = pushedDays == null ? null : parseDays(pushedDays);
+            if (days != null && days.size() > 0) {
+                int applied = applyDays(location, days);
+                if (applied > 0 && preferred) {
+                    mCallbacks.onWeatherChanged();
+                }
+                // Days we don't have can only come from a full sync
+                dirty |= applied < days.size();
+            }
+            if (dirty && preferred) {
+                mCallbacks.requestExpeditedSync();
+            }
+        } catch (JSONException e) {
+            // Not a weather update we understand, the next periodic sync will catch up
+            Log.w(LOG_TAG, "Ignoring push: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the pushed days, skipping any that have no date, a value of the wrong type or
+     * nothing to change.
+     *
+     * @return the values of each day, with its normalized date in COLUMN_DATE
+     */
+    private static List<ContentValues> parseDays(JSONArray days) {
+        List<ContentValues> parsed = new ArrayList<>(days.length());
+        for (int i = 0; i < days.length(); i++) {
+            JSONObject day = days.optJSONObject(i);
+            long date = day == null
+                    ? -1 : day.optLong(WeatherContract.WeatherEntry.COLUMN_DATE, -1);
+            if (date < 0) {
+                Log.w(LOG_TAG, "Skipping pushed day without a date: " + days.opt(i));
+                continue;
+            }
+            ContentValues values = new ContentValues();
+            try {
+                for (String column : PUSHABLE_COLUMNS) {
+                    if (!day.has(column)) {
+                        continue;
+                    }
+                    if (WeatherContract.WeatherEntry.COLUMN_SHORT_DESC.equals(column)) {
+                        values.put(column, day.getString(column));
+                    } else if (WeatherContract.WeatherEntry.COLUMN_WEATHER_ID.equals(column)) {
+                        values.put(column, day.getInt(column));
+                    } else {
+                        values.put(column, day.getDouble(column));
+                    }
+                }
+            } catch (JSONException e) {
+                Log.w(LOG_TAG, "Skipping pushed day: " + e.getMessage());
+                continue;
+            }
+            if (values.size() == 0) {
+                continue;
+            }
+            values.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                    WeatherContract.normalizeDate(date));
+            parsed.add(values);
+        }
+        return parsed;
+    }
+
+    /**
+     * @return the number of days that were found and updated
+     */
+    private int applyDays(String location, List<ContentValues> days) {
+        long locationId = queryLocationId(location);
+        if (locationId == -1) {
+            return 0;
+        }
+        int applied = 0;
+        for (ContentValues values : days) {
+            long date = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+            values.remove(WeatherContract.WeatherEntry.COLUMN_DATE);
+            int updated = mContext.getContentResolver().update(
+                    WeatherContract.WeatherEntry.CONTENT_URI, values, WEATHER_ROW_SELECTION,
+                    new String[]{Long.toString(locationId), Long.toString(date)});
+            if (updated > 0) {
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    private long queryLocationId(String location) {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                new String[]{WeatherContract.LocationEntry._ID},
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{location},
+                null);
+        if (cursor == null) {
+            return -1;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.muzei;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.util.DisplayMetrics;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.FutureTarget;
+import com.example.android.sunshine.app.R;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Serves the wallpapers we hand to Muzei from local files, so that Muzei never downloads a
+ * weather image itself and we only download each one once.
+ *
+ * Images are kept in files/muzei, scaled so that their short side matches the long side of the
+ * screen, which is what Muzei needs to fill the screen in either orientation.  The provider is
+ * read only and serves nothing but the files in that directory.
+ */
+public class MuzeiImageProvider extends ContentProvider {
+    private static final String LOG_TAG = MuzeiImageProvider.class.getSimpleName();
+
+    private static final String IMAGE_DIR = "muzei";
+    private static final int JPEG_QUALITY = 90;
+
+    /**
+     * Returns a content URI for a local copy of the image, downloading and scaling it first if
+     * we don't have it yet.  Blocks, so it must not be called on the main thread.
+     *
+     * @return the content URI, or null if the image couldn't be downloaded
+     */
+    static Uri getImageUri(Context context, String imageUrl) {
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        int size = Math.max(metrics.widthPixels, metrics.heightPixels);
+        String fileName = Integer.toHexString(imageUrl.hashCode()) + "_" + size + ".jpg";
+        File dir = new File(context.getFilesDir(), IMAGE_DIR);
+        File file = new File(dir, fileName);
+        if (!file.exists()) {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                Log.e(LOG_TAG, "Unable to create " + dir);
+                return null;
+            }
+            if (!download(context, imageUrl, size, file)) {
+                return null;
+            }
+            deleteOthers(dir, fileName);
+        }
+        return new Uri.Builder()
+                .scheme("content")
+                .authority(context.getString(R.string.muzei_image_authority))
+                .appendPath(fileName)
+                .build();
+    }
+
+    private static boolean download(Context context, String imageUrl, int size, File file) {
+        // Decoded at least as large as asked for, we scale it the rest of the way below
+        FutureTarget<Bitmap> request = Glide.with(context)
+                .load(imageUrl)
+                .asBitmap()
+                .into(size, size);
+        try {
+            Bitmap image = request.get();
+            float scale = Math.min(1f,
+                    (float) size / Math.min(image.getWidth(), image.getHeight()));
+            Bitmap scaled = Bitmap.createScaledBitmap(image,
+                    Math.max(1, Math.round(image.getWidth() * scale)),
+                    Math.max(1, Math.round(image.getHeight() * scale)), true);
+            // Write to a temporary file so that a half-written image is never served
+            File partial = new File(file.getPath() + ".tmp");
+            boolean written = writeJpeg(scaled, partial) && partial.renameTo(file);
+            if (scaled != image) {
+                scaled.recycle();
+            }
+            if (!written) {
+                partial.delete();
+            }
+            return written;
+        } catch (InterruptedException | ExecutionException e) {
+            Log.e(LOG_TAG, "Error retrieving wallpaper from " + imageUrl, e);
+            return false;
+        } finally {
+            Glide.clear(request);
+        }
+    }
+
+    private static boolean writeJpeg(Bitmap bitmap, File file) {
+        OutputStream out = null;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(file));
+            return bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Unable to write " + file, e);
+            return false;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing stream", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops images cached for another screen size, which we won't serve again.
+     */
+    private static void deleteOthers(File dir, String fileName) {
+        String sizeSuffix = fileName.substring(fileName.indexOf('_'));
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File other : files) {
+            if (!other.getName().endsWith(sizeSuffix)) {
+                other.delete();
+            }
+        }
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        if (!"r".equals(mode)) {
+            throw new FileNotFoundException("Read only: " + uri);
+        }
+        String fileName = uri.getLastPathSegment();
+        if (fileName == null || uri.getPathSegments().size() != 1
+                || !fileName.matches("[0-9a-f]+_[0-9]+\\.jpg")) {
+            throw new FileNotFoundException("Unknown image: " + uri);
+        }
+        File file = new File(new File(getContext().getFilesDir(), IMAGE_DIR), fileName);
+        return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return "image/jpeg";
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("Read only: " + uri);
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Read only: " + uri);
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Read only: " + uri);
+    }
+}
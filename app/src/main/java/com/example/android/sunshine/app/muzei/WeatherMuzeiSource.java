@@ -59,21 +59,42 @@ public class WeatherMuzeiSource extends MuzeiArtSource {
                 location, System.currentTimeMillis());
         Cursor cursor = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
                 null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-        if (cursor.moveToFirst()) {
+        if (cursor == null) {
+            return;
+        }
+        try {
+            if (!cursor.moveToFirst()) {
+                return;
+            }
             int weatherId = cursor.getInt(INDEX_WEATHER_ID);
             String desc = cursor.getString(INDEX_SHORT_DESC);
 
+            // Muzei already shows this condition for this location, don't make it fetch and
+            // crossfade to the same wallpaper again
+            String token = weatherId + "|" + location;
+            Artwork current = getCurrentArtwork();
+            if (current != null && token.equals(current.getToken())) {
+                return;
+            }
+
             String imageUrl = Utility.getImageUrlForWeatherCondition(weatherId);
             // Only publish a new wallpaper if we have a valid image
             if (imageUrl != null) {
+                Uri imageUri = MuzeiImageProvider.getImageUri(this, imageUrl);
+                if (imageUri == null) {
+                    // Couldn't cache it, let Muzei try the download itself
+                    imageUri = Uri.parse(imageUrl);
+                }
                 publishArtwork(new Artwork.Builder()
-                        .imageUri(Uri.parse(imageUrl))
+                        .imageUri(imageUri)
                         .title(desc)
                         .byline(location)
+                        .token(token)
                         .viewIntent(new Intent(this, MainActivity.class))
                         .build());
             }
+        } finally {
+            cursor.close();
         }
-        cursor.close();
     }
 }
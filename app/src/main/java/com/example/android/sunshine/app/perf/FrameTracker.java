@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.perf;
+
+import android.content.Context;
+import android.view.Choreographer;
+import android.view.Display;
+import android.view.WindowManager;
+
+/**
+ * Measures how smoothly the main thread draws while a scenario runs, such as a list fling or
+ * the detail transition.  While running it asks for a callback on every vsync; the time
+ * between two callbacks is how long that frame took, and every whole refresh interval beyond
+ * the first is a dropped frame.  Frame durations go to the {@link Metrics} histogram
+ * "frame.&lt;scenario&gt;" and dropped frames to the counter "frame.&lt;scenario&gt;.dropped".
+ *
+ * Must be started and stopped on the main thread.
+ */
+public class FrameTracker implements Choreographer.FrameCallback {
+    public static final String SCENARIO_LIST_SCROLL = "list_scroll";
+    public static final String SCENARIO_DETAIL_OPEN = "detail_open";
+    public static final String SCENARIO_TWO_PANE_SELECT = "two_pane_select";
+
+    // Long enough to cover the detail transitions, which run for a few hundred ms
+    public static final long TRANSITION_CAPTURE_MS = 1000;
+
+    private static final float DEFAULT_REFRESH_RATE = 60;
+
+    private final String mHistogram;
+    private final String mDroppedCounter;
+    private final long mFrameIntervalNanos;
+    private boolean mRunning;
+    private long mLastFrameNanos;
+    // Stop by itself at this frame time, or 0 to run until stop()
+    private long mStopAtNanos;
+
+    public FrameTracker(Context context, String scenario) {
+        mHistogram = histogramName(scenario);
+        mDroppedCounter = droppedCounterName(scenario);
+        Display display = ((WindowManager) context.getSystemService(Context.WINDOW_SERVICE))
+                .getDefaultDisplay();
+        float refreshRate = display.getRefreshRate();
+        if (refreshRate < 1) {
+            refreshRate = DEFAULT_REFRESH_RATE;
+        }
+        mFrameIntervalNanos = (long) (1000000000L / refreshRate);
+    }
+
+    public static String histogramName(String scenario) {
+        return "frame." + scenario;
+    }
+
+    public static String droppedCounterName(String scenario) {
+        return "frame." + scenario + ".dropped";
+    }
+
+    /**
+     * Tracks frames until {@link #stop}.  Does nothing if already running.
+     */
+    public void start() {
+        if (mRunning) {
+            return;
+        }
+        mRunning = true;
+        mLastFrameNanos = 0;
+        mStopAtNanos = 0;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /**
+     * Tracks frames for the next {@code durationMs}, e.g. for a transition that has no
+     * convenient end callback.  Restarts the window if already running.
+     */
+    public void startFor(long durationMs) {
+        start();
+        mStopAtNanos = System.nanoTime() + durationMs * 1000000;
+    }
+
+    public void stop() {
+        if (!mRunning) {
+            return;
+        }
+        mRunning = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!mRunning) {
+            return;
+        }
+        if (mLastFrameNanos != 0) {
+            long frameNanos = frameTimeNanos - mLastFrameNanos;
+            Metrics.recordMicros(mHistogram, frameNanos / 1000);
+            long dropped = (frameNanos + mFrameIntervalNanos / 2) / mFrameIntervalNanos - 1;
+            if (dropped > 0) {
+                Metrics.add(mDroppedCounter, dropped);
+            }
+        }
+        mLastFrameNanos = frameTimeNanos;
+        if (mStopAtNanos != 0 && frameTimeNanos >= mStopAtNanos) {
+            mRunning = false;
+            return;
+        }
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+}
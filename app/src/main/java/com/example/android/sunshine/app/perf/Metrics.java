@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.perf;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process-wide counters and latency histograms for the app's hot paths.  Recording is
+ * lock-free and allocation-free once a metric exists, so it is always on:
+ * <pre>
+ *   long start = Metrics.start();
+ *   ...
+ *   Metrics.record(Metrics.PROVIDER_QUERY, start);
+ * </pre>
+ * Histograms keep log-scaled buckets, four per power of two of microseconds, so percentiles
+ * are accurate to within about 20%.  Debug builds can show them on screen
+ * ({@link MetricsOverlay}) and dump them as JSON through a content URI:
+ *
+ *   adb shell content query --uri content://com.example.android.sunshine.app.metrics
+ */
+public class Metrics {
+    // Latencies
+    public static final String SYNC = "sync";
+    public static final String PROVIDER_QUERY = "provider.query";
+    public static final String LOADER_FIRST_DATA = "loader.first_data";
+    public static final String ADAPTER_BIND = "adapter.bind";
+    public static final String WIDGET_TODAY = "widget.today";
+    public static final String WIDGET_DETAIL_DATA = "widget.detail.data";
+    public static final String WIDGET_DETAIL_ROW = "widget.detail.row";
+    public static final String WEAR_PUSH = "wear.push";
+
+    // Counters
+    public static final String SYNC_ERRORS = "sync.errors";
+    public static final String WEAR_PUSH_ERRORS = "wear.push.errors";
+
+    private static final ConcurrentMap<String, AtomicLong> sCounters =
+            new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Histogram> sHistograms =
+            new ConcurrentHashMap<>();
+
+    /**
+     * A latency distribution in microseconds.
+     */
+    static class Histogram {
+        private static final int SUB_BUCKETS = 4;
+        // Up to 2^32 us, a bit over an hour, which is far more than anything we time
+        private static final int BUCKETS = 32 * SUB_BUCKETS + 1;
+
+        private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mSumMicros = new AtomicLong();
+        private final AtomicLong mMaxMicros = new AtomicLong();
+
+        void record(long micros) {
+            mBuckets.incrementAndGet(bucketFor(micros));
+            mCount.incrementAndGet();
+            mSumMicros.addAndGet(micros);
+            long max;
+            while (micros > (max = mMaxMicros.get())) {
+                if (mMaxMicros.compareAndSet(max, micros)) {
+                    break;
+                }
+            }
+        }
+
+        long count() {
+            return mCount.get();
+        }
+
+        long meanMicros() {
+            long count = mCount.get();
+            return count == 0 ? 0 : mSumMicros.get() / count;
+        }
+
+        long maxMicros() {
+            return mMaxMicros.get();
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return the lower bound of the bucket holding that percentile
+         */
+        long percentileMicros(double percentile) {
+            long[] buckets = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = mBuckets.get(i);
+                total += buckets[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i];
+                if (seen >= rank && buckets[i] > 0) {
+                    return lowerBound(i);
+                }
+            }
+            return lowerBound(BUCKETS - 1);
+        }
+
+        private static int bucketFor(long micros) {
+            if (micros < 1) {
+                return 0;
+            }
+            int log2 = 63 - Long.numberOfLeadingZeros(micros);
+            // The two bits after the leading one pick the sub-bucket
+            int sub = (int) (log2 >= 2 ? micros >> (log2 - 2) : micros << (2 - log2)) & 3;
+            return Math.min(BUCKETS - 1, 1 + log2 * SUB_BUCKETS + sub);
+        }
+
+        private static long lowerBound(int bucket) {
+            if (bucket == 0) {
+                return 0;
+            }
+            int log2 = (bucket - 1) / SUB_BUCKETS;
+            int sub = (bucket - 1) % SUB_BUCKETS;
+            return ((long) (SUB_BUCKETS + sub) << log2) / SUB_BUCKETS;
+        }
+    }
+
+    /**
+     * @return a timestamp to pass to {@link #record}
+     */
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the time since {@code startNanos}, from {@link #start}, under {@code name}.
+     */
+    public static void record(String name, long startNanos) {
+        recordMicros(name, (System.nanoTime() - startNanos) / 1000);
+    }
+
+    public static void recordMicros(String name, long micros) {
+        Histogram histogram = sHistograms.get(name);
+        if (histogram == null) {
+            Histogram created = new Histogram();
+            histogram = sHistograms.putIfAbsent(name, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        histogram.record(micros);
+    }
+
+    public static void increment(String name) {
+        add(name, 1);
+    }
+
+    public static void add(String name, long delta) {
+        AtomicLong counter = sCounters.get(name);
+        if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = sCounters.putIfAbsent(name, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        counter.addAndGet(delta);
+    }
+
+    /**
+     * @return the histograms recorded so far, sorted by name
+     */
+    static Map<String, Histogram> histograms() {
+        return new TreeMap<>(sHistograms);
+    }
+
+    /**
+     * @return the counters so far, sorted by name
+     */
+    static Map<String, Long> counters() {
+        Map<String, Long> counters = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> entry : sCounters.entrySet()) {
+            counters.put(entry.getKey(), entry.getValue().get());
+        }
+        return counters;
+    }
+
+    /**
+     * Forgets everything recorded so far, e.g. between runs of a test.
+     */
+    public static void reset() {
+        sCounters.clear();
+        sHistograms.clear();
+    }
+
+    /**
+     * @return everything recorded so far, as
+     *         {"counters": {name: count}, "histograms": {name: {"count": .., "p50_us": .., ...}}}
+     */
+    public static JSONObject toJson() throws JSONException {
+        JSONObject counters = new JSONObject();
+        for (Map.Entry<String, Long> entry : counters().entrySet()) {
+            counters.put(entry.getKey(), entry.getValue());
+        }
+        JSONObject histograms = new JSONObject();
+        for (Map.Entry<String, Histogram> entry : histograms().entrySet()) {
+            Histogram histogram = entry.getValue();
+            histograms.put(entry.getKey(), new JSONObject()
+                    .put("count", histogram.count())
+                    .put("mean_us", histogram.meanMicros())
+                    .put("p50_us", histogram.percentileMicros(50))
+                    .put("p90_us", histogram.percentileMicros(90))
+                    .put("p99_us", histogram.percentileMicros(99))
+                    .put("max_us", histogram.maxMicros()));
+        }
+        return new JSONObject()
+                .put("timestamp", System.currentTimeMillis())
+                .put("counters", counters)
+                .put("histograms", histograms);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.perf;
+
+import android.app.Activity;
+import android.content.Context;
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.preference.PreferenceManager;
+import android.util.TypedValue;
+import android.view.Gravity;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import com.example.android.sunshine.app.BuildConfig;
+import com.example.android.sunshine.app.R;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A small table of live {@link Metrics} percentiles drawn over an activity, refreshed every
+ * second.  Only available in debug builds, where it is switched on from the overflow menu.
+ */
+public class MetricsOverlay implements Runnable {
+    private static final long REFRESH_MS = 1000;
+
+    private final Activity mActivity;
+    private TextView mView;
+
+    public MetricsOverlay(Activity activity) {
+        mActivity = activity;
+    }
+
+    public static boolean isEnabled(Context context) {
+        return BuildConfig.DEBUG && PreferenceManager.getDefaultSharedPreferences(context)
+                .getBoolean(context.getString(R.string.pref_metrics_overlay_key), false);
+    }
+
+    public static void setEnabled(Context context, boolean enabled) {
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .putBoolean(context.getString(R.string.pref_metrics_overlay_key), enabled)
+                .apply();
+    }
+
+    public void show() {
+        if (mView != null) {
+            return;
+        }
+        mView = new TextView(mActivity);
+        mView.setTypeface(Typeface.MONOSPACE);
+        mView.setTextSize(TypedValue.COMPLEX_UNIT_SP, 10);
+        mView.setTextColor(Color.WHITE);
+        mView.setBackgroundColor(0xa0000000);
+        int padding = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 4,
+                mActivity.getResources().getDisplayMetrics());
+        mView.setPadding(padding, padding, padding, padding);
+        // Touches go through to the app underneath
+        mView.setClickable(false);
+        mView.setFocusable(false);
+
+        FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(
+                ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT,
+                Gravity.BOTTOM | Gravity.START);
+        ((ViewGroup) mActivity.getWindow().getDecorView()).addView(mView, params);
+        run();
+    }
+
+    public void hide() {
+        if (mView == null) {
+            return;
+        }
+        mView.removeCallbacks(this);
+        ((ViewGroup) mActivity.getWindow().getDecorView()).removeView(mView);
+        mView = null;
+    }
+
+    @Override
+    public void run() {
+        StringBuilder text = new StringBuilder(
+                String.format(Locale.US, "%-18s %6s %7s %7s %7s", "ms", "n", "p50", "p90", "p99"));
+        for (Map.Entry<String, Metrics.Histogram> entry : Metrics.histograms().entrySet()) {
+            Metrics.Histogram histogram = entry.getValue();
+            text.append('\n').append(String.format(Locale.US, "%-18s %6d %7.1f %7.1f %7.1f",
+                    entry.getKey(), histogram.count(),
+                    histogram.percentileMicros(50) / 1000.0,
+                    histogram.percentileMicros(90) / 1000.0,
+                    histogram.percentileMicros(99) / 1000.0));
+        }
+        for (Map.Entry<String, Long> entry : Metrics.counters().entrySet()) {
+            text.append('\n').append(String.format(Locale.US, "%-18s %6d",
+                    entry.getKey(), entry.getValue()));
+        }
+        mView.setText(text);
+        mView.postDelayed(this, REFRESH_MS);
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.perf;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records named sections of an app launch, from MainActivity.onCreate until the first frame of
+ * the forecast list has been drawn (and any work deferred past it has run).
+ *
+ * Each section is also emitted as an {@link android.os.Trace} section, so it shows up in
+ * systrace.  When the launch finishes it is appended to a JSON file in the app's external files
+ * directory, which keeps the last {@link #MAX_LAUNCHES} launches and can be pulled with adb:
+ *
+ *   adb pull /sdcard/Android/data/com.example.android.sunshine.app/files/startup_trace.json
+ */
+public class StartupTrace {
+    private static final String LOG_TAG = StartupTrace.class.getSimpleName();
+
+    private static final String TRACE_FILE = "startup_trace.json";
+    private static final int MAX_LAUNCHES = 50;
+
+    // Section names used by the launch path
+    public static final String SECTION_ON_CREATE = "MainActivity.onCreate";
+    public static final String SECTION_CONTENT_VIEW = "setContentView";
+    public static final String SECTION_SYNC_INIT = "SunshineSyncAdapter.initializeSyncAdapter";
+    public static final String SECTION_PLAY_SERVICES = "checkPlayServices";
+    public static final String SECTION_WEAR_SYNC = "SunshineSyncWearService.start";
+    public static final String MARK_FIRST_FRAME = "ForecastFragment.firstFrame";
+
+    private static final Object sLock = new Object();
+    // Serializes appends to the trace file, apart from sLock so the UI thread never waits on I/O
+    private static final Object sFileLock = new Object();
+    private static boolean sProcessLaunched = false;
+    private static StartupTrace sCurrent;
+
+    private static class Section {
+        final String name;
+        final long startMs;
+        long durationMs = -1;
+
+        Section(String name, long startMs) {
+            this.name = name;
+            this.startMs = startMs;
+        }
+    }
+
+    private final long mLaunchTime;
+    private final long mStartElapsed;
+    private final boolean mColdStart;
+    private final boolean mDeferred;
+    private final List<Section> mSections = new ArrayList<>();
+    private final Map<String, Section> mOpenSections = new HashMap<>();
+
+    private StartupTrace(boolean coldStart, boolean deferred) {
+        mLaunchTime = System.currentTimeMillis();
+        mStartElapsed = SystemClock.elapsedRealtime();
+        mColdStart = coldStart;
+        mDeferred = deferred;
+    }
+
+    /**
+     * Starts tracing a launch.  Only the first launch in a process counts as a cold start.
+     *
+     * @param deferred Whether non-UI initialization is deferred until after the first frame
+     */
+    public static void beginLaunch(boolean deferred) {
+        synchronized (sLock) {
+            sCurrent = new StartupTrace(!sProcessLaunched, deferred);
+            sProcessLaunched = true;
+        }
+    }
+
+    public static void beginSection(String name) {
+        Trace.beginSection(name);
+        synchronized (sLock) {
+            if (sCurrent != null) {
+                Section section = new Section(name,
+                        SystemClock.elapsedRealtime() - sCurrent.mStartElapsed);
+                sCurrent.mSections.add(section);
+                sCurrent.mOpenSections.put(name, section);
+            }
+        }
+    }
+
+    public static void endSection(String name) {
+        synchronized (sLock) {
+            if (sCurrent != null) {
+                Section section = sCurrent.mOpenSections.remove(name);
+                if (section != null) {
+                    section.durationMs = SystemClock.elapsedRealtime()
+                            - sCurrent.mStartElapsed - section.startMs;
+                }
+            }
+        }
+        Trace.endSection();
+    }
+
+    /**
+     * Records an instant in the launch, such as the first frame being drawn.
+     */
+    public static void mark(String name) {
+        synchronized (sLock) {
+            if (sCurrent != null) {
+                Section section = new Section(name,
+                        SystemClock.elapsedRealtime() - sCurrent.mStartElapsed);
+                section.durationMs = 0;
+                sCurrent.mSections.add(section);
+            }
+        }
+    }
+
+    /**
+     * Ends the launch being traced and persists it in the background.  Sections that are still
+     * open are recorded without a duration.
+     */
+    public static void finishLaunch(Context context) {
+        final StartupTrace trace;
+        synchronized (sLock) {
+            trace = sCurrent;
+            sCurrent = null;
+        }
+        if (trace == null) {
+            return;
+        }
+        final JSONObject launch;
+        try {
+            launch = trace.toJson();
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, "Unable to serialize startup trace", e);
+            return;
+        }
+        Log.d(LOG_TAG, "Launch " + launch.toString());
+
+        final File file = getTraceFile(context);
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                append(file, launch);
+            }
+        });
+    }
+
+    /**
+     * @return the file holding the persisted launches
+     */
+    public static File getTraceFile(Context context) {
+        File dir = context.getExternalFilesDir(null);
+        if (dir == null) {
+            // External storage isn't mounted, keep the trace private
+            dir = context.getFilesDir();
+        }
+        return new File(dir, TRACE_FILE);
+    }
+
+    private JSONObject toJson() throws JSONException {
+        JSONObject launch = new JSONObject();
+        launch.put("timestamp", mLaunchTime);
+        launch.put("cold", mColdStart);
+        launch.put("deferred", mDeferred);
+        JSONArray sections = new JSONArray();
+        for (Section section : mSections) {
+            JSONObject json = new JSONObject();
+            json.put("name", section.name);
+            json.put("start_ms", section.startMs);
+            json.put("duration_ms", section.durationMs);
+            sections.put(json);
+        }
+        launch.put("sections", sections);
+        return launch;
+    }
+
+    private static void append(File file, JSONObject launch) {
+        synchronized (sFileLock) {
+            JSONArray launches = new JSONArray();
+            if (file.exists()) {
+                BufferedReader reader = null;
+                try {
+                    reader = new BufferedReader(new FileReader(file));
+                    StringBuilder buffer = new StringBuilder();
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        buffer.append(line);
+                    }
+                    launches = new JSONArray(buffer.toString());
+                } catch (IOException | JSONException e) {
+                    Log.w(LOG_TAG, "Discarding unreadable startup trace", e);
+                } finally {
+                    if (reader != null) {
+                        try {
+                            reader.close();
+                        } catch (IOException e) {
+                            Log.e(LOG_TAG, "Error closing stream", e);
+                        }
+                    }
+                }
+            }
+
+            // Keep only the most recent launches
+            JSONArray trimmed = new JSONArray();
+            int first = Math.max(0, launches.length() + 1 - MAX_LAUNCHES);
+            for (int i = first; i < launches.length(); i++) {
+                trimmed.put(launches.opt(i));
+            }
+            trimmed.put(launch);
+
+            FileWriter writer = null;
+            try {
+                writer = new FileWriter(file);
+                writer.write(trimmed.toString());
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Unable to write startup trace", e);
+            } finally {
+                if (writer != null) {
+                    try {
+                        writer.close();
+                    } catch (IOException e) {
+                        Log.e(LOG_TAG, "Error closing stream", e);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.app.AlarmManager;
+import android.app.IntentService;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Spreads fresh weather to everything outside the app once a sync has committed it: the
+ * notification, the watch and Muzei.  The sync adapter only {@link #enqueue}s and returns.
+ *
+ * The queue lives in SharedPreferences, so it survives the process being killed.  Each task
+ * is queued at most once however often it is enqueued, since it always works from what is in
+ * the provider when it runs.  Tasks run highest priority first, each with its own time limit;
+ * a task that fails or runs out of time is retried later with exponential backoff, up to its
+ * own number of attempts.  The wear task counts as done once the Data API has taken the item,
+ * or as soon as connecting fails on a device without the Wearable API.  The Muzei task only
+ * hands the update to the Muzei source's own service and can't tell how that goes, so it runs
+ * once, without a time limit.
+ */
+public class FanOutService extends IntentService {
+    private static final String LOG_TAG = FanOutService.class.getSimpleName();
+
+    public static final int TASK_NOTIFICATION = 1;
+    public static final int TASK_WEAR = 1 << 1;
+    public static final int TASK_MUZEI = 1 << 2;
+
+    private static final Task[] TASKS = {
+            new Task(TASK_NOTIFICATION, "notification", 2, 20 * 1000, 3),
+            new Task(TASK_WEAR, "wear", 1, 10 * 1000, 3),
+            new Task(TASK_MUZEI, "muzei", 0, 0, 1)
+    };
+
+    private static final long RETRY_BASE_DELAY_MS = 30 * 1000;
+
+    private static final String QUEUE_PREFS = "fan_out_queue";
+    // Per task: when it may next run (wall clock), failed attempts so far, and a count that
+    // changes whenever it is enqueued, so that a run can tell it has been enqueued again
+    private static final String DUE_SUFFIX = "_due";
+    private static final String ATTEMPTS_SUFFIX = "_attempts";
+    private static final String GENERATION_SUFFIX = "_generation";
+
+    // Guards read-modify-write of the queue between enqueue() and the service thread
+    private static final Object sQueueLock = new Object();
+
+    // TASK_ flags of the tasks whose code is still running.  A task abandoned after its time
+    // limit may ignore the interrupt and carry on; a retry must not start a second copy.
+    // Guarded by sRunningLock.
+    private static int sRunningTasks;
+    private static final Object sRunningLock = new Object();
+
+    private ExecutorService mExecutor;
+
+    private static class Task {
+        final int flag;
+        final String name;
+        final int priority;
+        // 0 for a task that only hands work on, which runs on the service thread
+        final long timeoutMs;
+        final int maxAttempts;
+
+        Task(int flag, String name, int priority, long timeoutMs, int maxAttempts) {
+            this.flag = flag;
+            this.name = name;
+            this.priority = priority;
+            this.timeoutMs = timeoutMs;
+            this.maxAttempts = maxAttempts;
+        }
+    }
+
+    public FanOutService() {
+        super(LOG_TAG);
+    }
+
+    /**
+     * Queues the given tasks (a combination of the TASK_ flags) to run as soon as possible and
+     * starts working through the queue.
+     */
+    public static void enqueue(Context context, int tasks) {
+        SharedPreferences queue = getQueue(context);
+        synchronized (sQueueLock) {
+            SharedPreferences.Editor editor = queue.edit();
+            for (Task task : TASKS) {
+                if ((tasks & task.flag) != 0) {
+                    editor.putLong(task.name + DUE_SUFFIX, 0);
+                    editor.putInt(task.name + ATTEMPTS_SUFFIX, 0);
+                    editor.putInt(task.name + GENERATION_SUFFIX,
+                            queue.getInt(task.name + GENERATION_SUFFIX, 0) + 1);
+                }
+            }
+            editor.apply();
+        }
+        context.startService(new Intent(context, FanOutService.class));
+    }
+
+    private static SharedPreferences getQueue(Context context) {
+        return context.getSharedPreferences(QUEUE_PREFS, Context.MODE_PRIVATE);
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mExecutor = Executors.newCachedThreadPool();
+    }
+
+    @Override
+    public void onDestroy() {
+        mExecutor.shutdownNow();
+        super.onDestroy();
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        SharedPreferences queue = getQueue(this);
+        Task task;
+        while ((task = nextDueTask(queue)) != null) {
+            int generation = queue.getInt(task.name + GENERATION_SUFFIX, 0);
+            boolean succeeded = run(task);
+            synchronized (sQueueLock) {
+                if (queue.getInt(task.name + GENERATION_SUFFIX, 0) != generation) {
+                    // Enqueued again while running, leave the fresh entry alone
+                    continue;
+                }
+                SharedPreferences.Editor editor = queue.edit();
+                int attempts = queue.getInt(task.name + ATTEMPTS_SUFFIX, 0) + 1;
+                if (succeeded || attempts >= task.maxAttempts) {
+                    if (!succeeded) {
+                        Log.w(LOG_TAG, "Giving up on " + task.name + " after " + attempts
+                                + " attempts");
+                    }
+                    editor.remove(task.name + DUE_SUFFIX);
+                    editor.remove(task.name + ATTEMPTS_SUFFIX);
+                } else {
+                    long delayMs = RETRY_BASE_DELAY_MS << (attempts - 1);
+                    Log.d(LOG_TAG, "Retrying " + task.name + " in " + delayMs + "ms");
+                    editor.putLong(task.name + DUE_SUFFIX, System.currentTimeMillis() + delayMs);
+                    editor.putInt(task.name + ATTEMPTS_SUFFIX, attempts);
+                }
+                editor.apply();
+            }
+        }
+        scheduleRetry(queue);
+    }
+
+    /**
+     * @return the highest priority task that is queued and due, or null if there is none
+     */
+    private static Task nextDueTask(SharedPreferences queue) {
+        long now = System.currentTimeMillis();
+        Task next = null;
+        synchronized (sQueueLock) {
+            for (Task task : TASKS) {
+                long due = queue.getLong(task.name + DUE_SUFFIX, -1);
+                if (due >= 0 && due <= now && (next == null || task.priority > next.priority)) {
+                    next = task;
+                }
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Runs a task on the executor so that it can be abandoned once it's out of time, or right
+     * here if it has no time limit.  If an abandoned run of the same task hasn't finished yet,
+     * this one does nothing and fails, so that the task is retried after that run ends.
+     *
+     * @return whether the task got its work done in time without throwing
+     */
+    private boolean run(final Task task) {
+        if (task.timeoutMs == 0) {
+            try {
+                return runTask(this, task.flag, 0);
+            } catch (RuntimeException e) {
+                Log.e(LOG_TAG, task.name + " failed", e);
+                return false;
+            }
+        }
+        Future<Boolean> future = mExecutor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                synchronized (sRunningLock) {
+                    if ((sRunningTasks & task.flag) != 0) {
+                        Log.w(LOG_TAG, task.name + " is still running from an earlier attempt");
+                        return false;
+                    }
+                    sRunningTasks |= task.flag;
+                }
+                try {
+                    return runTask(FanOutService.this, task.flag, task.timeoutMs);
+                } finally {
+                    synchronized (sRunningLock) {
+                        sRunningTasks &= ~task.flag;
+                    }
+                }
+            }
+        });
+        long start = SystemClock.elapsedRealtime();
+        try {
+            boolean succeeded = future.get(task.timeoutMs, TimeUnit.MILLISECONDS);
+            Log.d(LOG_TAG, task.name + (succeeded ? " done in " : " failed after ")
+                    + (SystemClock.elapsedRealtime() - start) + "ms");
+            return succeeded;
+        } catch (TimeoutException e) {
+            Log.w(LOG_TAG, task.name + " timed out after " + task.timeoutMs + "ms");
+            future.cancel(true);
+            return false;
+        } catch (ExecutionException e) {
+            Log.e(LOG_TAG, task.name + " failed", e.getCause());
+            return false;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * @return whether the task got its work done
+     */
+    private static boolean runTask(Context context, int flag, long timeoutMs) {
+        switch (flag) {
+            case TASK_NOTIFICATION:
+                WeatherNotifier.notifyWeather(context);
+                break;
+            case TASK_WEAR:
+                return SunshineSyncWearService.sendWeather(context, timeoutMs);
+            case TASK_MUZEI:
+                // Muzei is only compatible with Jelly Bean MR1+ devices, so there's no need to
+                // update the Muzei background on lower API level devices
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+                    context.startService(new Intent(SunshineSyncAdapter.ACTION_DATA_UPDATED)
+                            .setClass(context, WeatherMuzeiSource.class));
+                }
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * Wakes the device and the service up when the earliest waiting retry is due, if there is
+     * one.
+     */
+    private void scheduleRetry(SharedPreferences queue) {
+        long earliest = Long.MAX_VALUE;
+        synchronized (sQueueLock) {
+            for (Task task : TASKS) {
+                long due = queue.getLong(task.name + DUE_SUFFIX, -1);
+                if (due >= 0) {
+                    earliest = Math.min(earliest, due);
+                }
+            }
+        }
+        AlarmManager alarmManager = (AlarmManager) getSystemService(Context.ALARM_SERVICE);
+        PendingIntent retryIntent = PendingIntent.getService(this, 0,
+                new Intent(this, FanOutService.class), PendingIntent.FLAG_UPDATE_CURRENT);
+        if (earliest == Long.MAX_VALUE) {
+            alarmManager.cancel(retryIntent);
+        } else {
+            alarmManager.set(AlarmManager.RTC_WAKEUP, earliest, retryIntent);
+        }
+    }
+}
@@ -2,9 +2,6 @@ package com.example.android.sunshine.app.sync;
 
 import android.accounts.Account;
 import android.accounts.AccountManager;
-import android.annotation.SuppressLint;
-import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
 import android.content.ContentProviderClient;
 import android.content.ContentResolver;
@@ -12,42 +9,32 @@ import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.content.SyncRequest;
 import android.content.SyncResult;
-import android.content.res.Resources;
+import android.content.SyncStats;
 import android.database.Cursor;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.database.SQLException;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
-import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
-import android.support.v4.app.NotificationCompat;
-import android.support.v4.app.TaskStackBuilder;
 import android.text.format.Time;
 import android.util.Log;
 
-import com.bumptech.glide.Glide;
 import com.example.android.sunshine.app.BuildConfig;
-import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.StateStore;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.art.WeatherArtCache;
+import com.example.android.sunshine.app.data.ForecastSnapshotFile;
+import com.example.android.sunshine.app.data.LocationCache;
 import com.example.android.sunshine.app.data.WeatherContract;
-import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
-import com.google.android.gms.common.ConnectionResult;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.wearable.DataApi;
-import com.google.android.gms.wearable.PutDataMapRequest;
-import com.google.android.gms.wearable.PutDataRequest;
-import com.google.android.gms.wearable.Wearable;
-
-import org.json.JSONArray;
+import com.example.android.sunshine.app.perf.Metrics;
+
 import org.json.JSONException;
-import org.json.JSONObject;
 
 import java.io.BufferedReader;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -55,9 +42,6 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.util.Vector;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
 
 public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
@@ -67,22 +51,6 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     // 60 seconds (1 minute) * 180 = 3 hours
     public static final int SYNC_INTERVAL = 60 * 180;
     public static final int SYNC_FLEXTIME = SYNC_INTERVAL/3;
-    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
-    private static final int WEATHER_NOTIFICATION_ID = 3004;
-
-
-    private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
-    };
-
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_MAX_TEMP = 1;
-    private static final int INDEX_MIN_TEMP = 2;
-    private static final int INDEX_SHORT_DESC = 3;
 
     @Retention(RetentionPolicy.SOURCE)
     @IntDef({LOCATION_STATUS_OK, LOCATION_STATUS_SERVER_DOWN, LOCATION_STATUS_SERVER_INVALID,  LOCATION_STATUS_UNKNOWN, LOCATION_STATUS_INVALID})
@@ -94,23 +62,26 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public static final int LOCATION_STATUS_UNKNOWN = 3;
     public static final int LOCATION_STATUS_INVALID = 4;
 
-    private GoogleApiClient mGoogleApiClient;
-    private static final int TIMEOUT_MS = 500;
-    private static final String WEATHER_PATH = "/weather";
-    private static final String ID_KEY = "weather_id";
-    private static final String LOW_KEY = "low_temp";
-    private static final String HIGH_KEY = "high_temp";
+    // Sync extra naming what asked for the sync, one of the SyncHistoryEntry.TRIGGER_ values
+    public static final String EXTRA_TRIGGER = "trigger";
+
+    // The OpenWeatherMap daily forecast endpoint, or a stand-in for it (see app/build.gradle)
+    private static volatile String sForecastBaseUrl = BuildConfig.FORECAST_BASE_URL;
+
+    // The status the current run has reported so far, for its row in the sync history
+    @LocationStatus
+    private int mRunStatus;
 
     public SunshineSyncAdapter(Context context, boolean autoInitialize) {
         super(context, autoInitialize);
-        mGoogleApiClient = new GoogleApiClient.Builder(context)
-                .addApi(Wearable.API)
-                .build();
     }
 
     @Override
     public void onPerformSync(Account account, Bundle extras, String authority, ContentProviderClient provider, SyncResult syncResult) {
         Log.d(LOG_TAG, "Starting sync");
+        long syncStart = Metrics.start();
+        long startTime = System.currentTimeMillis();
+        mRunStatus = LOCATION_STATUS_UNKNOWN;
 
         // We no longer need just the location String, but also potentially the latitude and
         // longitude, in case we are syncing based on a new Place Picker API result.
@@ -123,6 +94,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         // so that they can be closed in the finally block.
         HttpURLConnection urlConnection = null;
         BufferedReader reader = null;
+        CountingInputStream countingStream = null;
 
         // Will contain the raw JSON response as a string.
         String forecastJsonStr = null;
@@ -135,8 +107,6 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
             // Construct the URL for the OpenWeatherMap query
             // Possible parameters are avaiable at OWM's forecast API page, at
             // http://openweathermap.org/API#forecast
-            final String FORECAST_BASE_URL =
-                    "http://api.openweathermap.org/data/2.5/forecast/daily?";
             final String QUERY_PARAM = "q";
             final String LAT_PARAM = "lat";
             final String LON_PARAM = "lon";
@@ -145,7 +115,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
             final String DAYS_PARAM = "cnt";
             final String APPID_PARAM = "APPID";
 
-            Uri.Builder uriBuilder = Uri.parse(FORECAST_BASE_URL).buildUpon();
+            Uri.Builder uriBuilder = Uri.parse(sForecastBaseUrl).buildUpon();
 
             // Instead of always building the query based off of the location string, we want to
             // potentially build a query using a lat/lon value. This will be the case when we are
@@ -180,7 +150,8 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                 // Nothing to do.
                 return;
             }
-            reader = new BufferedReader(new InputStreamReader(inputStream));
+            countingStream = new CountingInputStream(inputStream);
+            reader = new BufferedReader(new InputStreamReader(countingStream));
 
             String line;
             while ((line = reader.readLine()) != null) {
@@ -196,7 +167,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                 return;
             }
             forecastJsonStr = buffer.toString();
-            getWeatherDataFromJson(forecastJsonStr, locationQuery);
+            getWeatherDataFromJson(forecastJsonStr, locationQuery, syncResult.stats);
         } catch (IOException e) {
             Log.e(LOG_TAG, "Error ", e);
             // If the code didn't successfully get the weather data, there's no point in attempting
@@ -207,6 +178,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
             e.printStackTrace();
             setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
         } finally {
+            Metrics.record(Metrics.SYNC, syncStart);
             if (urlConnection != null) {
                 urlConnection.disconnect();
             }
@@ -217,89 +189,94 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                     Log.e(LOG_TAG, "Error closing stream", e);
                 }
             }
+            addSyncHistory(startTime, countingStream == null ? 0 : countingStream.getCount(),
+                    syncResult.stats, locationQuery, getTrigger(extras));
         }
         return;
     }
 
     /**
-     * Take the String representing the complete forecast in JSON Format and
-     * pull out the data we need to construct the Strings needed for the wireframes.
-     *
-     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
-     * into an Object hierarchy for us.
+     * Appends this run to the sync history.  The history is only for looking at, so failing to
+     * write it doesn't fail the sync.
      */
-    private void getWeatherDataFromJson(String forecastJsonStr,
-                                        String locationSetting)
-            throws JSONException {
-
-        // Now we have a String representing the complete forecast in JSON Format.
-        // Fortunately parsing is easy:  constructor takes the JSON string and converts it
-        // into an Object hierarchy for us.
-
-        // These are the names of the JSON objects that need to be extracted.
-
-        // Location information
-        final String OWM_CITY = "city";
-        final String OWM_CITY_NAME = "name";
-        final String OWM_COORD = "coord";
+    private void addSyncHistory(long startTime, long bytesFetched, SyncStats stats,
+                                String locationSetting, String trigger) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherContract.SyncHistoryEntry.COLUMN_START_TIME, startTime);
+        values.put(WeatherContract.SyncHistoryEntry.COLUMN_END_TIME, System.currentTimeMillis());
+        values.put(WeatherContract.SyncHistoryEntry.COLUMN_BYTES_FETCHED, bytesFetched);
+        values.put(WeatherContract.SyncHistoryEntry.COLUMN_ROWS_INSERTED, stats.numInserts);
+        values.put(WeatherContract.SyncHistoryEntry.COLUMN_ROWS_UPDATED, stats.numUpdates);
+        values.put(WeatherContract.SyncHistoryEntry.COLUMN_ROWS_DELETED, stats.numDeletes);
+        values.put(WeatherContract.SyncHistoryEntry.COLUMN_STATUS, mRunStatus);
+        values.put(WeatherContract.SyncHistoryEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        values.put(WeatherContract.SyncHistoryEntry.COLUMN_TRIGGER, trigger);
+        try {
+            getContext().getContentResolver().insert(
+                    WeatherContract.SyncHistoryEntry.CONTENT_URI, values);
+        } catch (SQLException e) {
+            Log.e(LOG_TAG, "Unable to record sync history", e);
+        }
+    }
 
-        // Location coordinate
-        final String OWM_LATITUDE = "lat";
-        final String OWM_LONGITUDE = "lon";
+    private static String getTrigger(Bundle extras) {
+        String trigger = extras.getString(EXTRA_TRIGGER);
+        if (trigger != null) {
+            return trigger;
+        }
+        // Periodic syncs are scheduled with empty extras
+        return extras.getBoolean(ContentResolver.SYNC_EXTRAS_MANUAL)
+                ? WeatherContract.SyncHistoryEntry.TRIGGER_MANUAL
+                : WeatherContract.SyncHistoryEntry.TRIGGER_PERIODIC;
+    }
 
-        // Weather information.  Each day's forecast info is an element of the "list" array.
-        final String OWM_LIST = "list";
+    /**
+     * Counts the bytes read through it, i.e. the size of the response body.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private long mCount;
 
-        final String OWM_PRESSURE = "pressure";
-        final String OWM_HUMIDITY = "humidity";
-        final String OWM_WINDSPEED = "speed";
-        final String OWM_WIND_DIRECTION = "deg";
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
 
-        // All temperatures are children of the "temp" object.
-        final String OWM_TEMPERATURE = "temp";
-        final String OWM_MAX = "max";
-        final String OWM_MIN = "min";
+        long getCount() {
+            return mCount;
+        }
 
-        final String OWM_WEATHER = "weather";
-        final String OWM_DESCRIPTION = "main";
-        final String OWM_WEATHER_ID = "id";
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCount++;
+            }
+            return b;
+        }
 
-        final String OWM_MESSAGE_CODE = "cod";
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0) {
+                mCount += read;
+            }
+            return read;
+        }
+    }
 
+    /**
+     * Take the String representing the complete forecast in JSON Format and
+     * pull out the data we need to construct the Strings needed for the wireframes.
+     *
+     * The parsing itself is done by {@link ForecastJsonParser}; this stores the result and
+     * adds the rows it inserted, replaced and deleted to {@code stats}.
+     */
+    private void getWeatherDataFromJson(String forecastJsonStr,
+                                        String locationSetting,
+                                        SyncStats stats)
+            throws JSONException {
         try {
-            JSONObject forecastJson = new JSONObject(forecastJsonStr);
             Context context = getContext();
 
-            // do we have an error?
-            if ( forecastJson.has(OWM_MESSAGE_CODE) ) {
-                int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
-
-                switch (errorCode) {
-                    case HttpURLConnection.HTTP_OK:
-                        break;
-                    case HttpURLConnection.HTTP_NOT_FOUND:
-                        setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
-                        return;
-                    default:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                        return;
-                }
-            }
-
-            JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
-
-            JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-            String cityName = cityJson.getString(OWM_CITY_NAME);
-
-            JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-            double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-            double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
-
-            long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
-
-            // Insert the new weather information into the database
-            Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
-
             // OWM returns daily forecasts based upon the local time of the city that is being
             // asked for, which means that we need to know the GMT offset to translate this data
             // properly.
@@ -314,80 +291,66 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
             // we start at the day returned by local time. Otherwise this is a mess.
             int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
 
-            // now we work exclusively in UTC
-            dayTime = new Time();
-
-            for(int i = 0; i < weatherArray.length(); i++) {
-                // These are the values that will be collected.
-                long dateTime;
-                double pressure;
-                int humidity;
-                double windSpeed;
-                double windDirection;
-
-                double high;
-                double low;
-
-                String description;
-                int weatherId;
-
-                // Get the JSON object representing the day
-                JSONObject dayForecast = weatherArray.getJSONObject(i);
-
-                // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay+i);
-
-                pressure = dayForecast.getDouble(OWM_PRESSURE);
-                humidity = dayForecast.getInt(OWM_HUMIDITY);
-                windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-                windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
+            ForecastJsonParser.Forecast forecast =
+                    ForecastJsonParser.parse(forecastJsonStr, julianStartDay);
 
-                // Description is in a child array called "weather", which is 1 element long.
-                // That element also contains a weather code.
-                JSONObject weatherObject =
-                        dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-                description = weatherObject.getString(OWM_DESCRIPTION);
-                weatherId = weatherObject.getInt(OWM_WEATHER_ID);
-
-                // Temperatures are in a child object called "temp".  Try not to name variables
-                // "temp" when working with temperature.  It confuses everybody.
-                JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-                high = temperatureObject.getDouble(OWM_MAX);
-                low = temperatureObject.getDouble(OWM_MIN);
-
-                ContentValues weatherValues = new ContentValues();
+            // do we have an error?
+            switch (forecast.errorCode) {
+                case HttpURLConnection.HTTP_OK:
+                    break;
+                case HttpURLConnection.HTTP_NOT_FOUND:
+                    if (!Utility.isLocationLatLonAvailable(context)) {
+                        // So that typing it in again doesn't need another round trip
+                        LocationCache.getInstance(context).putInvalid(locationSetting);
+                    }
+                    setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
+                    return;
+                default:
+                    setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
+                    return;
+            }
 
+            long locationId = addLocation(locationSetting, forecast.cityName,
+                    forecast.cityLatitude, forecast.cityLongitude);
+            // Picked places were cached with their own coordinates when they were picked
+            if (!Utility.isLocationLatLonAvailable(context)) {
+                LocationCache.getInstance(context).putCity(locationSetting, forecast.cityId,
+                        forecast.cityName, forecast.cityLatitude, forecast.cityLongitude);
+            }
+            ContentValues[] cvArray = forecast.days;
+            for (ContentValues weatherValues : cvArray) {
                 weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
-
-                cVVector.add(weatherValues);
             }
 
-            int inserted = 0;
             // add to database
-            if ( cVVector.size() > 0 ) {
-                ContentValues[] cvArray = new ContentValues[cVVector.size()];
-                cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
+            if ( cvArray.length > 0 ) {
+                // Days already stored are replaced rather than added
+                int replaced = countStoredDays(locationId, cvArray);
+                int inserted = getContext().getContentResolver().bulkInsert(
+                        WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
+                stats.numUpdates += replaced;
+                stats.numInserts += Math.max(0, inserted - replaced);
 
                 // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
+                // (now we work exclusively in UTC)
+                dayTime = new Time();
+                stats.numDeletes += getContext().getContentResolver().delete(
+                        WeatherContract.WeatherEntry.CONTENT_URI,
                         WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
                         new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))});
 
+                // Keep a copy of the list rows around for the next cold start
+                ForecastSnapshotFile.write(context, locationSetting);
+                // We have network now, a good time to fetch the art pack if it's missing
+                WeatherArtCache.getInstance(context).prefetch();
+
                 updateWidgets();
-                updateMuzei();
-                notifyWeather();
+                // The notification, the watch and Muzei may each take a while (image hosts,
+                // a watch that isn't around), so they run after the sync has returned
+                FanOutService.enqueue(context, FanOutService.TASK_NOTIFICATION
+                        | FanOutService.TASK_WEAR | FanOutService.TASK_MUZEI);
             }
-            Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
+            Log.d(LOG_TAG, "Sync Complete. " + cvArray.length + " Inserted");
             setLocationStatus(getContext(), LOCATION_STATUS_OK);
 
         } catch (JSONException e) {
@@ -397,6 +360,32 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         }
     }
 
+    /**
+     * @return how many of the days in {@code days}, which are in date order, are already stored
+     * for the location
+     */
+    private int countStoredDays(long locationId, ContentValues[] days) {
+        Cursor cursor = getContext().getContentResolver().query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                new String[]{WeatherContract.WeatherEntry._ID},
+                WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND "
+                        + WeatherContract.WeatherEntry.COLUMN_DATE + " BETWEEN ? AND ?",
+                new String[]{Long.toString(locationId),
+                        Long.toString(WeatherContract.normalizeDate(days[0]
+                                .getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE))),
+                        Long.toString(WeatherContract.normalizeDate(days[days.length - 1]
+                                .getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE)))},
+                null);
+        if (cursor == null) {
+            return 0;
+        }
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
     private void updateWidgets() {
         Context context = getContext();
         // Setting the package ensures that only components in our app will receive the broadcast
@@ -405,151 +394,6 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         context.sendBroadcast(dataUpdatedIntent);
     }
 
-    private void updateMuzei() {
-        // Muzei is only compatible with Jelly Bean MR1+ devices, so there's no need to update the
-        // Muzei background on lower API level devices
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
-            Context context = getContext();
-            context.startService(new Intent(ACTION_DATA_UPDATED)
-                    .setClass(context, WeatherMuzeiSource.class));
-        }
-    }
-
-    private void notifyWeather() {
-        Context context = getContext();
-        String locationQuery = Utility.getPreferredLocation(context);
-        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
-
-        // we'll query our contentProvider, as always
-        Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
-
-        if (cursor!=null && cursor.moveToFirst()) {
-            int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-            double high = cursor.getDouble(INDEX_MAX_TEMP);
-            double low = cursor.getDouble(INDEX_MIN_TEMP);
-            String desc = cursor.getString(INDEX_SHORT_DESC);
-
-            int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
-            Resources resources = context.getResources();
-            int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-            String artUrl = Utility.getArtUrlForWeatherCondition(context, weatherId);
-
-            // On Honeycomb and higher devices, we can retrieve the size of the large icon
-            // Prior to that, we use a fixed size
-            @SuppressLint("InlinedApi")
-            int largeIconWidth = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
-                    ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
-                    : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
-            @SuppressLint("InlinedApi")
-            int largeIconHeight = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
-                    ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
-                    : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
-
-            // Retrieve the large icon
-            Bitmap largeIcon;
-            try {
-                largeIcon = Glide.with(context)
-                        .load(artUrl)
-                        .asBitmap()
-                        .error(artResourceId)
-                        .fitCenter()
-                        .into(largeIconWidth, largeIconHeight).get();
-            } catch (InterruptedException | ExecutionException e) {
-                Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
-                largeIcon = BitmapFactory.decodeResource(resources, artResourceId);
-            }
-
-            //checking the last update and notify if it' the first of the day
-            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-            String displayNotificationsKey = context.getString(R.string.pref_enable_notifications_key);
-            boolean displayNotifications = prefs.getBoolean(displayNotificationsKey,
-                    Boolean.parseBoolean(context.getString(R.string.pref_enable_notifications_default)));
-
-            if ( displayNotifications ) {
-
-                String lastNotificationKey = context.getString(R.string.pref_last_notification);
-                long lastSync = prefs.getLong(lastNotificationKey, 0);
-                // Last sync was more than 1 day ago, let's send a notification with the weather.
-                if (System.currentTimeMillis() - lastSync >= DAY_IN_MILLIS) {
-
-
-                    String title = context.getString(R.string.app_name);
-
-                    // Define the text of the forecast.
-                    String contentText = String.format(context.getString(R.string.format_notification),
-                            desc,
-                            Utility.formatTemperature(context, high),
-                            Utility.formatTemperature(context, low));
-
-                    // NotificationCompatBuilder is a very convenient way to build backward-compatible
-                    // notifications.  Just throw in some data.
-                    NotificationCompat.Builder mBuilder =
-                            new NotificationCompat.Builder(getContext())
-                                    .setColor(resources.getColor(R.color.primary_light))
-                                    .setSmallIcon(iconId)
-                                    .setLargeIcon(largeIcon)
-                                    .setContentTitle(title)
-                                    .setContentText(contentText);
-
-                    // Make something interesting happen when the user clicks on the notification.
-                    // In this case, opening the app is sufficient.
-                    Intent resultIntent = new Intent(context, MainActivity.class);
-
-                    // The stack builder object will contain an artificial back stack for the
-                    // started Activity.
-                    // This ensures that navigating backward from the Activity leads out of
-                    // your application to the Home screen.
-                    TaskStackBuilder stackBuilder = TaskStackBuilder.create(context);
-                    stackBuilder.addNextIntent(resultIntent);
-                    PendingIntent resultPendingIntent =
-                            stackBuilder.getPendingIntent(
-                                    0,
-                                    PendingIntent.FLAG_UPDATE_CURRENT
-                            );
-                    mBuilder.setContentIntent(resultPendingIntent);
-
-                    NotificationManager mNotificationManager =
-                            (NotificationManager) getContext().getSystemService(Context.NOTIFICATION_SERVICE);
-                    // WEATHER_NOTIFICATION_ID allows you to update the notification later on.
-                    mNotificationManager.notify(WEATHER_NOTIFICATION_ID, mBuilder.build());
-
-                    //refreshing last sync
-                    SharedPreferences.Editor editor = prefs.edit();
-                    editor.putLong(lastNotificationKey, System.currentTimeMillis());
-                    editor.commit();
-                }
-            }
-
-            ConnectionResult result = mGoogleApiClient.blockingConnect(TIMEOUT_MS, TimeUnit.MILLISECONDS);
-            Log.d(LOG_TAG, "Google API result: " + result);
-
-            if (!mGoogleApiClient.isConnected()) {
-                Log.d(LOG_TAG, "Google API not connected");
-                return;
-            }
-
-            //create data item
-            PutDataMapRequest dataMap = PutDataMapRequest.create(WEATHER_PATH);
-            dataMap.getDataMap().putInt(ID_KEY, weatherId);
-            dataMap.getDataMap().putDouble(HIGH_KEY, high);
-            dataMap.getDataMap().putDouble(LOW_KEY, low);
-            PutDataRequest request = dataMap.asPutDataRequest();
-            request.setUrgent();
-
-            //send data to wearable
-            DataApi.DataItemResult dataItemResult = Wearable.DataApi
-                    .putDataItem(mGoogleApiClient, request).await();
-
-            Log.d (LOG_TAG, dataItemResult.toString());
-            Log.d (LOG_TAG, dataItemResult.getStatus().getStatusMessage());
-
-            mGoogleApiClient.disconnect();
-        }
-
-        if (cursor!=null)
-            cursor.close();
-    }
-
     /**
      * Helper method to handle insertion of a new location in the weather database.
      *
@@ -600,6 +444,13 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         return locationId;
     }
 
+    /**
+     * Points syncs at another forecast server, for tests against a local stand-in.
+     */
+    static void setForecastBaseUrl(String baseUrl) {
+        sForecastBaseUrl = baseUrl;
+    }
+
     /**
      * Helper method to schedule the sync adapter periodic execution
      */
@@ -624,9 +475,19 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
      * @param context The context used to access the account service
      */
     public static void syncImmediately(Context context) {
+        syncImmediately(context, WeatherContract.SyncHistoryEntry.TRIGGER_MANUAL);
+    }
+
+    /**
+     * Helper method to have the sync adapter sync immediately
+     * @param context The context used to access the account service
+     * @param trigger What asked for the sync, one of the SyncHistoryEntry.TRIGGER_ values
+     */
+    public static void syncImmediately(Context context, String trigger) {
         Bundle bundle = new Bundle();
         bundle.putBoolean(ContentResolver.SYNC_EXTRAS_EXPEDITED, true);
         bundle.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
+        bundle.putString(EXTRA_TRIGGER, trigger);
         ContentResolver.requestSync(getSyncAccount(context),
                 context.getString(R.string.content_authority), bundle);
     }
@@ -692,15 +553,16 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     }
 
     /**
-     * Sets the location status into shared preference.  This function should not be called from
-     * the UI thread because it uses commit to write to the shared preferences.
+     * Sets the location status into shared preference, without waiting for the disk (see
+     * {@link StateStore}).
      * @param c Context to get the PreferenceManager from.
      * @param locationStatus The IntDef value to set
      */
-    static private void setLocationStatus(Context c, @LocationStatus int locationStatus){
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(c);
-        SharedPreferences.Editor spe = sp.edit();
-        spe.putInt(c.getString(R.string.pref_location_status_key), locationStatus);
-        spe.commit();
+    private void setLocationStatus(Context c, @LocationStatus int locationStatus){
+        mRunStatus = locationStatus;
+        if (locationStatus != LOCATION_STATUS_OK) {
+            Metrics.increment(Metrics.SYNC_ERRORS);
+        }
+        StateStore.setLocationStatus(c, locationStatus);
     }
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.example.android.sunshine.app.sync;
 
 import android.app.IntentService;
+import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
@@ -8,14 +9,11 @@ import android.util.Log;
 
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
-import com.google.android.gms.common.ConnectionResult;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.PutDataMapRequest;
-import com.google.android.gms.wearable.PutDataRequest;
-import com.google.android.gms.wearable.Wearable;
 
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class SunshineSyncWearService extends IntentService {
     public static final String TAG = "SunshineSyncWearService";
@@ -32,13 +30,14 @@ public class SunshineSyncWearService extends IntentService {
     private static final int INDEX_MAX_TEMP = 1;
     private static final int INDEX_MIN_TEMP = 2;
 
-    private GoogleApiClient mGoogleApiClient;
-    private static final int TIMEOUT_MS = 500;
     private static final String WEATHER_PATH = "/weather";
     private static final String ID_KEY = "weather_id";
     private static final String LOW_KEY = "low_temp";
     private static final String HIGH_KEY = "high_temp";
 
+    // How long a resend asked for by the watch waits for the Data API
+    private static final long SEND_TIMEOUT_MS = 10 * 1000;
+
     public SunshineSyncWearService(){
         super(TAG);
 
@@ -46,47 +45,63 @@ public class SunshineSyncWearService extends IntentService {
 
     @Override
     protected void onHandleIntent(Intent intent) {
-        mGoogleApiClient = new GoogleApiClient.Builder(this)
-                .addApi(Wearable.API)
-                .build();
-        String locationQuery = Utility.getPreferredLocation(this);
-        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
+        sendWeather(this, SEND_TIMEOUT_MS);
+    }
 
-        // we'll query our contentProvider, as always
-        Cursor cursor = this.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
+    /**
+     * Sends today's weather and the forecast window to the wearable through the shared
+     * {@link WearableSession}, and waits up to {@code timeoutMs} for the Data API to take it.
+     * Must not be called from the UI thread.  Nothing is sent if the watch has already been
+     * sent this forecast.  If the item doesn't go through, the forecast is not recorded as sent,
+     * so the next call sends it again.
+     *
+     * @return false if the item was refused or not taken in time, or the wait was interrupted,
+     * unless the device has no Wearable API at all
+     */
+    public static boolean sendWeather(Context context, long timeoutMs) {
+        WearForecast forecast = WearForecast.query(context);
+        if (forecast == null) {
+            return true;
+        }
+        PutDataMapRequest dataMap = PutDataMapRequest.create(WEATHER_PATH);
+        if (!WearForecast.putNextVersion(context, forecast, dataMap.getDataMap())) {
+            return true;
+        }
+        int version = dataMap.getDataMap().getInt(WearForecast.VERSION_KEY);
 
+        // Today on its own as well, for watch faces that predate the forecast window
+        String locationQuery = Utility.getPreferredLocation(context);
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
+        Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
         if (cursor!=null && cursor.moveToFirst()) {
-            int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-            double high = cursor.getDouble(INDEX_MAX_TEMP);
-            double low = cursor.getDouble(INDEX_MIN_TEMP);
-
-            ConnectionResult result = mGoogleApiClient.blockingConnect(TIMEOUT_MS, TimeUnit.MILLISECONDS);
-            Log.d(TAG, "Google API result: " + result);
-
-            if (!mGoogleApiClient.isConnected()) {
-                Log.d(TAG, "Google API not connected");
-                return;
-            }
-
-            //create data item
-            PutDataMapRequest dataMap = PutDataMapRequest.create(WEATHER_PATH);
-            dataMap.getDataMap().putInt(ID_KEY, weatherId);
-            dataMap.getDataMap().putDouble(HIGH_KEY, high);
-            dataMap.getDataMap().putDouble(LOW_KEY, low);
-            PutDataRequest request = dataMap.asPutDataRequest();
-            request.setUrgent();
-
-            //send data to wearable
-            DataApi.DataItemResult dataItemResult = Wearable.DataApi
-                    .putDataItem(mGoogleApiClient, request).await();
-
-            Log.d (TAG, dataItemResult.toString());
-            Log.d (TAG, dataItemResult.getStatus().getStatusMessage());
-
-            mGoogleApiClient.disconnect();
+            dataMap.getDataMap().putInt(ID_KEY, cursor.getInt(INDEX_WEATHER_ID));
+            dataMap.getDataMap().putDouble(HIGH_KEY, cursor.getDouble(INDEX_MAX_TEMP));
+            dataMap.getDataMap().putDouble(LOW_KEY, cursor.getDouble(INDEX_MIN_TEMP));
         }
-
         if (cursor!=null)
             cursor.close();
+
+        //send data to wearable
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicBoolean delivered = new AtomicBoolean();
+        WearableSession.getInstance(context).putDataItem(dataMap, true,
+                new WearableSession.OnDeliveredListener() {
+                    @Override
+                    public void onDelivered(boolean success) {
+                        delivered.set(success);
+                        done.countDown();
+                    }
+                });
+        try {
+            if (done.await(timeoutMs, TimeUnit.MILLISECONDS) && delivered.get()) {
+                return true;
+            }
+            Log.w(TAG, "Forecast version " + version + " not delivered");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        WearForecast.onSendFailed(context, version);
+        // Without a Wearable API there is nothing to retry for
+        return WearableSession.getInstance(context).isUnavailable();
     }
 }
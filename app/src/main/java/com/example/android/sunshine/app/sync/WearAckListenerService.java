@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Intent;
+import android.util.Log;
+
+import com.google.android.gms.wearable.DataEvent;
+import com.google.android.gms.wearable.DataEventBuffer;
+import com.google.android.gms.wearable.DataMapItem;
+import com.google.android.gms.wearable.WearableListenerService;
+
+/**
+ * Receives the watch face's acknowledgements of the forecast versions we send it, which is
+ * what lets {@link WearForecast} send only the days that changed.
+ */
+public class WearAckListenerService extends WearableListenerService {
+    private static final String LOG_TAG = WearAckListenerService.class.getSimpleName();
+
+    @Override
+    public void onDataChanged(DataEventBuffer dataEvents) {
+        for (DataEvent event : dataEvents) {
+            if (event.getType() != DataEvent.TYPE_CHANGED
+                    || !WearForecast.ACK_PATH.equals(event.getDataItem().getUri().getPath())) {
+                continue;
+            }
+            int version = DataMapItem.fromDataItem(event.getDataItem()).getDataMap()
+                    .getInt(WearForecast.VERSION_KEY);
+            Log.d(LOG_TAG, "Watch acknowledged forecast version " + version);
+            if (!WearForecast.onAck(this, version)) {
+                // The watch couldn't apply a delta, send it everything again
+                startService(new Intent(this, SunshineSyncWearService.class));
+            }
+        }
+    }
+}
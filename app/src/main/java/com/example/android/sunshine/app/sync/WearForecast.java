@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.net.Uri;
+import android.text.format.Time;
+import android.util.Base64;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.google.android.gms.wearable.DataMap;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The forecast window sent to the watch face, so that it can move on to the next day at
+ * midnight by itself.
+ *
+ * Days are packed into a byte array, {@link #BYTES_PER_DAY} bytes each (big endian):
+ * <pre>
+ *   short weather id
+ *   short max temp, in tenths of a degree Celsius
+ *   short min temp, in tenths of a degree Celsius
+ * </pre>
+ * Day i of the window is Julian day {@code start_day + i}.  Once the watch has acknowledged a
+ * version, later versions only carry the days that differ from it, each prefixed by a byte
+ * holding its index in the window.  The watch answers a delta it can't apply with an ack of
+ * {@link #VERSION_NEEDS_FULL}, after which we send the whole window again.
+ *
+ * The watch face has its own copy of this format.
+ */
+class WearForecast {
+    // DataMap keys, alongside the legacy weather_id / high_temp / low_temp of today
+    static final String VERSION_KEY = "version";
+    static final String START_DAY_KEY = "start_day";
+    static final String DAY_COUNT_KEY = "day_count";
+    static final String DAYS_KEY = "days";
+    static final String BASE_VERSION_KEY = "base_version";
+    static final String CHANGED_DAYS_KEY = "changed_days";
+
+    // Written by the watch once it has applied a version
+    static final String ACK_PATH = "/forecast_ack";
+    static final int VERSION_NEEDS_FULL = -1;
+
+    static final int BYTES_PER_DAY = 6;
+    private static final int MAX_DAYS = 14;
+
+    // What we last sent and what the watch last confirmed having
+    private static final String STATE_PREFS = "wear_forecast";
+    private static final String SENT_PREFIX = "sent_";
+    private static final String ACKED_PREFIX = "acked_";
+    // The last version number handed out.  Never cleared, so that a version the watch may
+    // still have, or may still ack, is never used for a different window.
+    private static final String LAST_VERSION_KEY = "last_version";
+    // Guards read-modify-write of the state between the fan-out executor, the resend service
+    // and acks.  apply() updates the in-memory preferences at once, so holding this is enough
+    // for each to see what the one before it wrote.
+    private static final Object sStateLock = new Object();
+
+    private static final String[] FORECAST_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+    };
+    // these indices must match the projection
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_WEATHER_ID = 1;
+    private static final int INDEX_MAX_TEMP = 2;
+    private static final int INDEX_MIN_TEMP = 3;
+
+    final int version;
+    final int startDay;
+    // dayCount * BYTES_PER_DAY bytes
+    final byte[] days;
+
+    private WearForecast(int version, int startDay, byte[] days) {
+        this.version = version;
+        this.startDay = startDay;
+        this.days = days;
+    }
+
+    int dayCount() {
+        return days.length / BYTES_PER_DAY;
+    }
+
+    boolean sameDaysAs(WearForecast other) {
+        return other != null && startDay == other.startDay && Arrays.equals(days, other.days);
+    }
+
+    /**
+     * Reads the forecast window of the preferred location, starting today.  The result has no
+     * version yet.
+     *
+     * @return the window, or null if there is no forecast for today
+     */
+    static WearForecast query(Context context) {
+        String locationQuery = Utility.getPreferredLocation(context);
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                locationQuery, System.currentTimeMillis());
+        Cursor cursor = context.getContentResolver().query(weatherUri, FORECAST_COLUMNS, null,
+                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            Time time = new Time();
+            time.setToNow();
+            int startDay = Time.getJulianDay(cursor.getLong(INDEX_DATE), time.gmtoff);
+            int count = Math.min(cursor.getCount(), MAX_DAYS);
+            ByteBuffer buffer = ByteBuffer.allocate(count * BYTES_PER_DAY);
+            for (int i = 0; i < count; i++) {
+                cursor.moveToPosition(i);
+                if (Time.getJulianDay(cursor.getLong(INDEX_DATE), time.gmtoff) != startDay + i) {
+                    // A gap in the data, the window ends here
+                    break;
+                }
+                buffer.putShort((short) cursor.getInt(INDEX_WEATHER_ID));
+                buffer.putShort((short) Math.round(cursor.getDouble(INDEX_MAX_TEMP) * 10));
+                buffer.putShort((short) Math.round(cursor.getDouble(INDEX_MIN_TEMP) * 10));
+            }
+            return new WearForecast(0, startDay, Arrays.copyOf(buffer.array(), buffer.position()));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Fills in the forecast part of the data map for this window as the next version, or does
+     * nothing if the watch has already been sent exactly this window.
+     *
+     * @return whether there is anything to send
+     */
+    static boolean putNextVersion(Context context, WearForecast forecast, DataMap dataMap) {
+        SharedPreferences state = context.getSharedPreferences(STATE_PREFS, Context.MODE_PRIVATE);
+        synchronized (sStateLock) {
+            WearForecast sent = load(state, SENT_PREFIX);
+            if (forecast.sameDaysAs(sent)) {
+                return false;
+            }
+            int version = Math.max(state.getInt(LAST_VERSION_KEY, 0),
+                    sent == null ? 0 : sent.version) + 1;
+            WearForecast next = new WearForecast(version, forecast.startDay, forecast.days);
+
+            dataMap.putInt(VERSION_KEY, version);
+            dataMap.putInt(START_DAY_KEY, next.startDay);
+            dataMap.putInt(DAY_COUNT_KEY, next.dayCount());
+            WearForecast acked = load(state, ACKED_PREFIX);
+            byte[] changed = acked == null ? null : delta(acked, next);
+            if (changed != null && changed.length < next.days.length) {
+                dataMap.putInt(BASE_VERSION_KEY, acked.version);
+                dataMap.putByteArray(CHANGED_DAYS_KEY, changed);
+            } else {
+                dataMap.putByteArray(DAYS_KEY, next.days);
+            }
+
+            SharedPreferences.Editor editor = state.edit();
+            editor.putInt(LAST_VERSION_KEY, version);
+            save(editor, SENT_PREFIX, next);
+            editor.apply();
+            return true;
+        }
+    }
+
+    /**
+     * Forgets that a version was sent, when it never reached the Data API, so that the next
+     * {@link #putNextVersion} sends the window again.  Does nothing if a later version has been
+     * sent since.
+     */
+    static void onSendFailed(Context context, int version) {
+        SharedPreferences state = context.getSharedPreferences(STATE_PREFS, Context.MODE_PRIVATE);
+        synchronized (sStateLock) {
+            WearForecast sent = load(state, SENT_PREFIX);
+            if (sent != null && sent.version == version) {
+                SharedPreferences.Editor editor = state.edit();
+                clear(editor, SENT_PREFIX);
+                editor.apply();
+            }
+        }
+    }
+
+    /**
+     * Records the watch's acknowledgement of a version.
+     *
+     * @return false if the watch asked for the whole window to be sent again
+     */
+    static boolean onAck(Context context, int version) {
+        SharedPreferences state = context.getSharedPreferences(STATE_PREFS, Context.MODE_PRIVATE);
+        synchronized (sStateLock) {
+            SharedPreferences.Editor editor = state.edit();
+            if (version == VERSION_NEEDS_FULL) {
+                // Forget the windows so that the next send is complete, under a new version
+                clear(editor, SENT_PREFIX);
+                clear(editor, ACKED_PREFIX);
+                editor.apply();
+                return false;
+            }
+            WearForecast sent = load(state, SENT_PREFIX);
+            if (sent != null && sent.version == version) {
+                save(editor, ACKED_PREFIX, sent);
+                editor.apply();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @return the days of {@code next} that the watch can't take from {@code base}, as
+     * (index, day) entries
+     */
+    private static byte[] delta(WearForecast base, WearForecast next) {
+        ByteBuffer buffer = ByteBuffer.allocate(next.dayCount() * (BYTES_PER_DAY + 1));
+        for (int i = 0; i < next.dayCount(); i++) {
+            int baseIndex = next.startDay + i - base.startDay;
+            if (baseIndex >= 0 && baseIndex < base.dayCount()
+                    && regionMatches(base.days, baseIndex * BYTES_PER_DAY,
+                    next.days, i * BYTES_PER_DAY, BYTES_PER_DAY)) {
+                continue;
+            }
+            buffer.put((byte) i);
+            buffer.put(next.days, i * BYTES_PER_DAY, BYTES_PER_DAY);
+        }
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private static boolean regionMatches(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[aOffset + i] != b[bOffset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static WearForecast load(SharedPreferences state, String prefix) {
+        String days = state.getString(prefix + DAYS_KEY, null);
+        if (days == null) {
+            return null;
+        }
+        return new WearForecast(state.getInt(prefix + VERSION_KEY, 0),
+                state.getInt(prefix + START_DAY_KEY, 0), Base64.decode(days, Base64.NO_WRAP));
+    }
+
+    private static void save(SharedPreferences.Editor editor, String prefix, WearForecast forecast) {
+        editor.putInt(prefix + VERSION_KEY, forecast.version);
+        editor.putInt(prefix + START_DAY_KEY, forecast.startDay);
+        editor.putString(prefix + DAYS_KEY, Base64.encodeToString(forecast.days, Base64.NO_WRAP));
+    }
+
+    private static void clear(SharedPreferences.Editor editor, String prefix) {
+        editor.remove(prefix + VERSION_KEY);
+        editor.remove(prefix + START_DAY_KEY);
+        editor.remove(prefix + DAYS_KEY);
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.example.android.sunshine.app.perf.Metrics;
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.ResultCallback;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One {@link GoogleApiClient} connection to the Wearable API for the whole process.
+ *
+ * Components that expect to send data soon (e.g. MainActivity while it is started) hold a
+ * reference with {@link #acquire()} / {@link #release()}; once nobody holds one and nothing is
+ * waiting to be sent, the connection is dropped after {@link #IDLE_TIMEOUT_MS}.  Data items put
+ * while the client is still connecting are queued (only the latest item per path is kept) and
+ * items identical to the last one sent on their path are not sent again.
+ *
+ * None of the methods block: all the work happens on the session's own thread.  Callers that
+ * need to know whether an item reached the Data API pass an {@link OnDeliveredListener}.
+ */
+public class WearableSession implements GoogleApiClient.ConnectionCallbacks,
+        GoogleApiClient.OnConnectionFailedListener {
+    private static final String LOG_TAG = WearableSession.class.getSimpleName();
+
+    private static final long IDLE_TIMEOUT_MS = 60 * 1000;
+
+    private static WearableSession sInstance;
+
+    /**
+     * Told, on the session's thread, how putting a data item went.  An item that is replaced
+     * by a newer one on its path before it goes out reports the newer one's result.
+     */
+    public interface OnDeliveredListener {
+        void onDelivered(boolean success);
+    }
+
+    private final GoogleApiClient mGoogleApiClient;
+    private final Handler mHandler;
+
+    // Everything below is only touched on mHandler's thread
+    private int mRefCount;
+    // Waiting for the connection, by path
+    private final Map<String, PutDataRequest> mPending = new LinkedHashMap<>();
+    // Serialized data of the last item sent on each path
+    private final Map<String, byte[]> mLastSent = new HashMap<>();
+    // When the oldest item still waiting on each path was handed to us, for Metrics.WEAR_PUSH
+    private final Map<String, Long> mQueuedAt = new HashMap<>();
+    // Waiting to hear how the item on each path went
+    private final Map<String, List<OnDeliveredListener>> mListeners = new HashMap<>();
+
+    // Set when the last connection attempt found no Wearable API on this device at all
+    private volatile boolean mUnavailable;
+
+    private final Runnable mDisconnectRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mRefCount == 0 && mPending.isEmpty()) {
+                Log.d(LOG_TAG, "Idle, disconnecting");
+                mGoogleApiClient.disconnect();
+            }
+        }
+    };
+
+    public static synchronized WearableSession getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WearableSession(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private WearableSession(Context context) {
+        HandlerThread thread = new HandlerThread(LOG_TAG);
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+        mGoogleApiClient = new GoogleApiClient.Builder(context)
+                .addApi(Wearable.API)
+                .addConnectionCallbacks(this)
+                .addOnConnectionFailedListener(this)
+                .setHandler(mHandler)
+                .build();
+    }
+
+    /**
+     * Starts connecting, if we aren't already, and keeps the connection open until the
+     * matching {@link #release()}.
+     */
+    public void acquire() {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mRefCount++;
+                mHandler.removeCallbacks(mDisconnectRunnable);
+                connect();
+            }
+        });
+    }
+
+    public void release() {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mRefCount > 0) {
+                    mRefCount--;
+                }
+                scheduleDisconnect();
+            }
+        });
+    }
+
+    /**
+     * Sends a data item, connecting first if needed.  Nothing is sent if the item's data is
+     * the same as what was last sent on its path.
+     */
+    public void putDataItem(PutDataMapRequest dataMap, boolean urgent) {
+        putDataItem(dataMap, urgent, null);
+    }
+
+    /**
+     * As {@link #putDataItem(PutDataMapRequest, boolean)}, telling the listener, if there is
+     * one, once the Data API has taken or refused the item.  An unchanged item counts as
+     * delivered; an item that is waiting when the connection fails counts as refused.
+     */
+    public void putDataItem(final PutDataMapRequest dataMap, final boolean urgent,
+                            final OnDeliveredListener listener) {
+        final String path = dataMap.getUri().getPath();
+        final PutDataRequest request = dataMap.asPutDataRequest();
+        if (urgent) {
+            request.setUrgent();
+        }
+        final long queuedAt = Metrics.start();
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (Arrays.equals(mLastSent.get(path), request.getData())) {
+                    Log.d(LOG_TAG, "Skipping unchanged " + path);
+                    if (listener != null) {
+                        listener.onDelivered(true);
+                    }
+                    return;
+                }
+                // Only the latest item per path matters
+                mPending.put(path, request);
+                if (listener != null) {
+                    List<OnDeliveredListener> listeners = mListeners.get(path);
+                    if (listeners == null) {
+                        listeners = new ArrayList<>();
+                        mListeners.put(path, listeners);
+                    }
+                    listeners.add(listener);
+                }
+                if (!mQueuedAt.containsKey(path)) {
+                    mQueuedAt.put(path, queuedAt);
+                }
+                mHandler.removeCallbacks(mDisconnectRunnable);
+                if (mGoogleApiClient.isConnected()) {
+                    flush();
+                } else {
+                    connect();
+                }
+            }
+        });
+    }
+
+    private void connect() {
+        if (!mGoogleApiClient.isConnected() && !mGoogleApiClient.isConnecting()) {
+            mGoogleApiClient.connect();
+        }
+    }
+
+    private void scheduleDisconnect() {
+        mHandler.removeCallbacks(mDisconnectRunnable);
+        if (mRefCount == 0 && mPending.isEmpty()) {
+            mHandler.postDelayed(mDisconnectRunnable, IDLE_TIMEOUT_MS);
+        }
+    }
+
+    private void flush() {
+        Iterator<Map.Entry<String, PutDataRequest>> iterator = mPending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, PutDataRequest> entry = iterator.next();
+            iterator.remove();
+            final String path = entry.getKey();
+            final PutDataRequest request = entry.getValue();
+            final long queuedAt = mQueuedAt.remove(path);
+            final List<OnDeliveredListener> listeners = mListeners.remove(path);
+            mLastSent.put(path, request.getData());
+            Wearable.DataApi.putDataItem(mGoogleApiClient, request).setResultCallback(
+                    new ResultCallback<DataApi.DataItemResult>() {
+                        @Override
+                        public void onResult(@NonNull DataApi.DataItemResult dataItemResult) {
+                            Log.d(LOG_TAG, path + ": " + dataItemResult.getStatus());
+                            if (dataItemResult.getStatus().isSuccess()) {
+                                Metrics.record(Metrics.WEAR_PUSH, queuedAt);
+                            } else {
+                                Metrics.increment(Metrics.WEAR_PUSH_ERRORS);
+                            }
+                            if (!dataItemResult.getStatus().isSuccess()
+                                    && Arrays.equals(mLastSent.get(path), request.getData())) {
+                                // Allow the same data to be sent again next time
+                                mLastSent.remove(path);
+                            }
+                            if (listeners != null) {
+                                for (OnDeliveredListener listener : listeners) {
+                                    listener.onDelivered(dataItemResult.getStatus().isSuccess());
+                                }
+                            }
+                        }
+                    });
+        }
+        scheduleDisconnect();
+    }
+
+    /**
+     * @return true if the last attempt to connect found that this device has no Wearable API,
+     * so there is no watch to send anything to
+     */
+    public boolean isUnavailable() {
+        return mUnavailable;
+    }
+
+    @Override
+    public void onConnected(Bundle bundle) {
+        Log.d(LOG_TAG, "Connected");
+        mUnavailable = false;
+        flush();
+    }
+
+    @Override
+    public void onConnectionSuspended(int cause) {
+        Log.d(LOG_TAG, "Connection suspended: " + cause);
+        // GoogleApiClient reconnects by itself, pending items go out in onConnected
+    }
+
+    @Override
+    public void onConnectionFailed(@NonNull ConnectionResult connectionResult) {
+        Log.d(LOG_TAG, "Google API not connected: " + connectionResult);
+        int error = connectionResult.getErrorCode();
+        mUnavailable = error == ConnectionResult.API_UNAVAILABLE
+                || error == ConnectionResult.SERVICE_MISSING;
+        // No wearable API on this device (or no watch): keep the newest items, the next
+        // acquire() or putDataItem() tries again.  Whoever is waiting on them hears now
+        // rather than waiting out their own time limit.
+        List<OnDeliveredListener> waiting = new ArrayList<>();
+        for (List<OnDeliveredListener> listeners : mListeners.values()) {
+            waiting.addAll(listeners);
+        }
+        mListeners.clear();
+        for (OnDeliveredListener listener : waiting) {
+            listener.onDelivered(false);
+        }
+        scheduleDisconnect();
+    }
+}
@@ -7,6 +7,8 @@ import android.appwidget.AppWidgetProvider;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.support.annotation.NonNull;
 import android.support.v4.app.TaskStackBuilder;
@@ -17,11 +19,20 @@ import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
+import java.util.Arrays;
+
 /**
  * Provider for a scrollable weather detail widget
  */
 @TargetApi(Build.VERSION_CODES.HONEYCOMB)
 public class DetailWidgetProvider extends AppWidgetProvider {
+    // Digest of the rows each widget was last told to show, under the widget id followed by
+    // KEY_CONTENT_DIGEST
+    private static final String STATE_PREFS = "detail_widget_state";
+    private static final String KEY_CONTENT_DIGEST = "_content_digest";
+    // A single hash for all widgets, from before digests were kept per widget
+    private static final String KEY_LEGACY_CONTENT_HASH = "content_hash";
+
     public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
         // Perform this loop procedure for each App Widget that belongs to this provider
         for (int appWidgetId : appWidgetIds) {
@@ -58,10 +69,63 @@ public class DetailWidgetProvider extends AppWidgetProvider {
     public void onReceive(@NonNull Context context, @NonNull Intent intent) {
         super.onReceive(context, intent);
         if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction())) {
-            AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
-            int[] appWidgetIds = appWidgetManager.getAppWidgetIds(
+            final AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
+            final int[] appWidgetIds = appWidgetManager.getAppWidgetIds(
                     new ComponentName(context, getClass()));
-            appWidgetManager.notifyAppWidgetViewDataChanged(appWidgetIds, R.id.widget_list);
+            if (appWidgetIds.length == 0) {
+                return;
+            }
+            // Invalidating the collection makes the launcher requery the factory and rebind
+            // every row, so only do it when the rows would actually look different.
+            final Context appContext = context.getApplicationContext();
+            final PendingResult result = goAsync();
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        invalidateChangedWidgets(appContext, appWidgetManager, appWidgetIds);
+                    } finally {
+                        result.finish();
+                    }
+                }
+            });
+        }
+    }
+
+    @Override
+    public void onDeleted(Context context, int[] appWidgetIds) {
+        SharedPreferences.Editor editor =
+                context.getSharedPreferences(STATE_PREFS, Context.MODE_PRIVATE).edit();
+        for (int appWidgetId : appWidgetIds) {
+            editor.remove(appWidgetId + KEY_CONTENT_DIGEST);
+        }
+        editor.apply();
+    }
+
+    /**
+     * Invalidates the collection of each widget whose rows would now look different, including
+     * any that haven't been told what to show yet.  Must not be called from the UI thread.
+     */
+    private static void invalidateChangedWidgets(Context context,
+                                                 AppWidgetManager appWidgetManager,
+                                                 int[] appWidgetIds) {
+        String digest = DetailWidgetRemoteViewsService.queryContentDigest(context);
+        SharedPreferences state = context.getSharedPreferences(STATE_PREFS, Context.MODE_PRIVATE);
+        SharedPreferences.Editor editor = state.edit();
+        int[] changed = new int[appWidgetIds.length];
+        int changedCount = 0;
+        for (int appWidgetId : appWidgetIds) {
+            if (!digest.equals(state.getString(appWidgetId + KEY_CONTENT_DIGEST, null))) {
+                changed[changedCount++] = appWidgetId;
+                editor.putString(appWidgetId + KEY_CONTENT_DIGEST, digest);
+            }
+        }
+        if (changedCount > 0) {
+            appWidgetManager.notifyAppWidgetViewDataChanged(
+                    Arrays.copyOf(changed, changedCount), R.id.widget_list);
+        }
+        if (changedCount > 0 || state.contains(KEY_LEGACY_CONTENT_HASH)) {
+            editor.remove(KEY_LEGACY_CONTENT_HASH).apply();
         }
     }
 
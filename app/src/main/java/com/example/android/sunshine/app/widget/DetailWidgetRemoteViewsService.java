@@ -1,24 +1,37 @@
 package com.example.android.sunshine.app.widget;
 
 import android.annotation.TargetApi;
+import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
+import android.os.SystemClock;
+import android.util.Base64;
 import android.util.Log;
+import android.util.SparseArray;
 import android.widget.AdapterView;
 import android.widget.RemoteViews;
 import android.widget.RemoteViewsService;
 
 import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.Target;
+import com.bumptech.glide.request.FutureTarget;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.art.WeatherArtCache;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.perf.Metrics;
 
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * RemoteViewsService controlling the data being shown in the scrollable weather detail widget
@@ -26,7 +39,7 @@ import java.util.concurrent.ExecutionException;
 @TargetApi(Build.VERSION_CODES.HONEYCOMB)
 public class DetailWidgetRemoteViewsService extends RemoteViewsService {
     public final String LOG_TAG = DetailWidgetRemoteViewsService.class.getSimpleName();
-    private static final String[] FORECAST_COLUMNS = {
+    static final String[] FORECAST_COLUMNS = {
             WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
             WeatherContract.WeatherEntry.COLUMN_DATE,
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
@@ -42,10 +55,67 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
     static final int INDEX_WEATHER_MAX_TEMP = 4;
     static final int INDEX_WEATHER_MIN_TEMP = 5;
 
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // How long a refresh waits for all of its art before using the bundled icons instead
+    private static final long ART_TIMEOUT_MS = 10 * 1000;
+
+    /**
+     * Digests everything the list rows display, so that a refresh that wouldn't change what's
+     * on screen can be skipped.  Must not be called from the UI thread.
+     *
+     * @return a SHA-1 of the rows, Base64 encoded
+     */
+    static String queryContentDigest(Context context) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android release has SHA-1
+            throw new IllegalStateException(e);
+        }
+        String location = Utility.getPreferredLocation(context);
+        // The friendly day names depend on today's date, the art on the pack
+        updateDigest(digest, location);
+        updateDigest(digest, WeatherContract.normalizeDate(System.currentTimeMillis()));
+        updateDigest(digest, Utility.getPreferredArtPack(context));
+
+        Uri weatherForLocationUri = WeatherContract.WeatherEntry
+                .buildWeatherLocationWithStartDate(location, System.currentTimeMillis());
+        Cursor data = context.getContentResolver().query(weatherForLocationUri,
+                FORECAST_COLUMNS,
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (data != null) {
+            while (data.moveToNext()) {
+                updateDigest(digest, data.getLong(INDEX_WEATHER_DATE));
+                updateDigest(digest, data.getInt(INDEX_WEATHER_CONDITION_ID));
+                updateDigest(digest, data.getString(INDEX_WEATHER_DESC));
+                updateDigest(digest, Utility.formatTemperature(context,
+                        data.getDouble(INDEX_WEATHER_MAX_TEMP)));
+                updateDigest(digest, Utility.formatTemperature(context,
+                        data.getDouble(INDEX_WEATHER_MIN_TEMP)));
+            }
+            data.close();
+        }
+        return Base64.encodeToString(digest.digest(), Base64.NO_WRAP);
+    }
+
+    private static void updateDigest(MessageDigest digest, Object value) {
+        digest.update(String.valueOf(value).getBytes(UTF_8));
+        // Separates the values, so that moving characters between them changes the digest
+        digest.update((byte) 0);
+    }
+
     @Override
     public RemoteViewsFactory onGetViewFactory(Intent intent) {
         return new RemoteViewsFactory() {
             private Cursor data = null;
+            // Row art prepared by onDataSetChanged, keyed by weather condition id
+            private final SparseArray<Bitmap> artByWeatherId = new SparseArray<>();
+            // Glide requests holding the bitmaps above, released on the next refresh
+            private final List<FutureTarget<Bitmap>> artRequests = new ArrayList<>();
 
             @Override
             public void onCreate() {
@@ -54,6 +124,7 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
 
             @Override
             public void onDataSetChanged() {
+                long start = Metrics.start();
                 if (data != null) {
                     data.close();
                 }
@@ -71,6 +142,72 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                         null,
                         WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
                 Binder.restoreCallingIdentity(identityToken);
+                prepareArt();
+                Metrics.record(Metrics.WIDGET_DETAIL_DATA, start);
+            }
+
+            /*
+                Gets the art for every row ready before the launcher starts asking for views, so
+                that getViewAt never waits on the network.  All the downloads are started before
+                we wait on any of them, and Glide scales them down to the widget's icon size, which
+                also keeps the RemoteViews well under the Binder transaction limit.
+             */
+            private void prepareArt() {
+                releaseArt();
+                if (data == null
+                        || Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this)) {
+                    return;
+                }
+                WeatherArtCache artCache =
+                        WeatherArtCache.getInstance(DetailWidgetRemoteViewsService.this);
+                int iconSize = getResources().getDimensionPixelSize(R.dimen.list_icon);
+                SparseArray<FutureTarget<Bitmap>> pending = new SparseArray<>();
+                for (int i = 0; i < data.getCount(); i++) {
+                    data.moveToPosition(i);
+                    int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
+                    if (artByWeatherId.indexOfKey(weatherId) >= 0
+                            || pending.indexOfKey(weatherId) >= 0) {
+                        continue;
+                    }
+                    // The art cache already has the pack at exactly this size
+                    Bitmap cached = artCache.getBitmap(weatherId, WeatherArtCache.TARGET_LIST);
+                    if (cached != null) {
+                        artByWeatherId.put(weatherId, cached);
+                        continue;
+                    }
+                    String url = Utility.getArtUrlForWeatherCondition(
+                            DetailWidgetRemoteViewsService.this, weatherId);
+                    if (url == null) {
+                        continue;
+                    }
+                    FutureTarget<Bitmap> request = Glide.with(DetailWidgetRemoteViewsService.this)
+                            .load(url)
+                            .asBitmap()
+                            .fitCenter()
+                            .into(iconSize, iconSize);
+                    artRequests.add(request);
+                    pending.put(weatherId, request);
+                }
+                // One deadline for the lot, the launcher is blocked until we return
+                long deadline = SystemClock.elapsedRealtime() + ART_TIMEOUT_MS;
+                for (int i = 0; i < pending.size(); i++) {
+                    long remainingMs = Math.max(0, deadline - SystemClock.elapsedRealtime());
+                    try {
+                        artByWeatherId.put(pending.keyAt(i),
+                                pending.valueAt(i).get(remainingMs, TimeUnit.MILLISECONDS));
+                    } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                        // getViewAt falls back to the bundled icon for this row
+                        Log.e(LOG_TAG, "Error retrieving weather art for " + pending.keyAt(i), e);
+                    }
+                }
+            }
+
+            private void releaseArt() {
+                artByWeatherId.clear();
+                for (FutureTarget<Bitmap> request : artRequests) {
+                    Glide.clear(request);
+                }
+                artRequests.clear();
             }
 
             @Override
@@ -79,6 +216,7 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                     data.close();
                     data = null;
                 }
+                releaseArt();
             }
 
             @Override
@@ -92,24 +230,12 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                         data == null || !data.moveToPosition(position)) {
                     return null;
                 }
+                long start = Metrics.start();
                 RemoteViews views = new RemoteViews(getPackageName(),
                         R.layout.widget_detail_list_item);
                 int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
                 int weatherArtResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
-                Bitmap weatherArtImage = null;
-                if ( !Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this) ) {
-                    String weatherArtResourceUrl = Utility.getArtUrlForWeatherCondition(
-                            DetailWidgetRemoteViewsService.this, weatherId);
-                    try {
-                        weatherArtImage = Glide.with(DetailWidgetRemoteViewsService.this)
-                                .load(weatherArtResourceUrl)
-                                .asBitmap()
-                                .error(weatherArtResourceId)
-                                .into(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + weatherArtResourceUrl, e);
-                    }
-                }
+                Bitmap weatherArtImage = artByWeatherId.get(weatherId);
                 String description = data.getString(INDEX_WEATHER_DESC);
                 long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
                 String formattedDate = Utility.getFriendlyDayString(
@@ -141,6 +267,7 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                         dateInMillis);
                 fillInIntent.setData(weatherUri);
                 views.setOnClickFillInIntent(R.id.widget_list_item, fillInIntent);
+                Metrics.record(Metrics.WIDGET_DETAIL_ROW, start);
                 return views;
             }
 
@@ -161,8 +288,9 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
 
             @Override
             public long getItemId(int position) {
+                // The date identifies a row across syncs, the _ID is replaced every time
                 if (data.moveToPosition(position))
-                    return data.getLong(INDEX_WEATHER_ID);
+                    return data.getLong(INDEX_WEATHER_DATE);
                 return position;
             }
 
@@ -20,7 +20,9 @@ import android.app.IntentService;
 import android.app.PendingIntent;
 import android.appwidget.AppWidgetManager;
 import android.content.ComponentName;
+import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
@@ -33,6 +35,10 @@ import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.perf.Metrics;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * IntentService which handles updating all Today widgets with the latest data
@@ -50,16 +56,66 @@ public class TodayWidgetIntentService extends IntentService {
     private static final int INDEX_MAX_TEMP = 2;
     private static final int INDEX_MIN_TEMP = 3;
 
+    // What was last pushed to each widget, so that we only send what changed.  Keys are the
+    // widget id followed by one of the KEY_ suffixes.
+    private static final String STATE_PREFS = "today_widget_state";
+    private static final String KEY_LAYOUT = "_layout";
+    private static final String KEY_ICON = "_icon";
+    private static final String KEY_DESCRIPTION = "_description";
+    private static final String KEY_HIGH = "_high";
+    private static final String KEY_LOW = "_low";
+
+    // Parts of a widget that can be sent on their own
+    private static final int CHANGED_ICON = 1;
+    private static final int CHANGED_DESCRIPTION = 1 << 1;
+    private static final int CHANGED_HIGH = 1 << 2;
+    private static final int CHANGED_LOW = 1 << 3;
+    // The widget needs its whole layout sent
+    private static final int CHANGED_LAYOUT = 1 << 4;
+
+    /**
+     * The widgets that get the same RemoteViews.
+     */
+    private static class Push {
+        final int layoutId;
+        final int changes;
+        final List<Integer> ids = new ArrayList<>();
+
+        Push(int layoutId, int changes) {
+            this.layoutId = layoutId;
+            this.changes = changes;
+        }
+    }
+
+    private int mDefaultWidth;
+    private int mLargeWidth;
+
     public TodayWidgetIntentService() {
         super("TodayWidgetIntentService");
     }
 
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mDefaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+        mLargeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
+    }
+
     @Override
     protected void onHandleIntent(Intent intent) {
+        long start = Metrics.start();
+        updateWidgets(intent);
+        Metrics.record(Metrics.WIDGET_TODAY, start);
+    }
+
+    private void updateWidgets(Intent intent) {
         // Retrieve all of the Today widget ids: these are the widgets we need to update
         AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(this);
         int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this,
                 TodayWidgetProvider.class));
+        // Widgets the system asked us to update get pushed even if we think they're current,
+        // e.g. after a reboot the host no longer has their views.
+        int[] forcedIds = intent.getIntArrayExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS);
 
         // Get today's data from the ContentProvider
         String location = Utility.getPreferredLocation(this);
@@ -85,46 +141,145 @@ public class TodayWidgetIntentService extends IntentService {
         String formattedMinTemperature = Utility.formatTemperature(this, minTemp);
         data.close();
 
-        // Perform this loop procedure for each Today widget
+        // Work out what each widget is missing.  Widgets sharing a layout and the same set of
+        // changes get exactly the same RemoteViews, so they're pushed together.
+        SharedPreferences state = getSharedPreferences(STATE_PREFS, MODE_PRIVATE);
+        List<Push> pushes = new ArrayList<>();
         for (int appWidgetId : appWidgetIds) {
-            // Find the correct layout based on the widget's width
-            int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetId);
-            int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
-            int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
-            int layoutId;
-            if (widgetWidth >= largeWidth) {
-                layoutId = R.layout.widget_today_large;
-            } else if (widgetWidth >= defaultWidth) {
-                layoutId = R.layout.widget_today;
+            int layoutId = getLayoutId(appWidgetManager, appWidgetId);
+            int changes;
+            if (contains(forcedIds, appWidgetId)
+                    || layoutId != state.getInt(appWidgetId + KEY_LAYOUT, 0)) {
+                changes = CHANGED_LAYOUT;
             } else {
-                layoutId = R.layout.widget_today_small;
+                changes = 0;
+                if (weatherArtResourceId != state.getInt(appWidgetId + KEY_ICON, 0)) {
+                    changes |= CHANGED_ICON;
+                }
+                if (!description.equals(state.getString(appWidgetId + KEY_DESCRIPTION, null))) {
+                    changes |= CHANGED_DESCRIPTION;
+                }
+                if (!formattedMaxTemperature.equals(state.getString(appWidgetId + KEY_HIGH, null))) {
+                    changes |= CHANGED_HIGH;
+                }
+                if (!formattedMinTemperature.equals(state.getString(appWidgetId + KEY_LOW, null))) {
+                    changes |= CHANGED_LOW;
+                }
             }
-            RemoteViews views = new RemoteViews(getPackageName(), layoutId);
+            if (changes == 0) {
+                // Already showing exactly this
+                continue;
+            }
+            getPush(pushes, layoutId, changes).ids.add(appWidgetId);
+        }
+        if (pushes.isEmpty()) {
+            return;
+        }
+
+        SharedPreferences.Editor editor = state.edit();
+        for (Push push : pushes) {
+            RemoteViews views = new RemoteViews(getPackageName(), push.layoutId);
+            boolean full = push.changes == CHANGED_LAYOUT;
 
             // Add the data to the RemoteViews
-            views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
-            // Content Descriptions for RemoteViews were only added in ICS MR1
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
-                setRemoteContentDescription(views, description);
+            if (full || (push.changes & CHANGED_ICON) != 0) {
+                views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
+            }
+            if (full || (push.changes & CHANGED_DESCRIPTION) != 0) {
+                // Content Descriptions for RemoteViews were only added in ICS MR1
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
+                    setRemoteContentDescription(views, description);
+                }
+                views.setTextViewText(R.id.widget_description, description);
+            }
+            if (full || (push.changes & CHANGED_HIGH) != 0) {
+                views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
             }
-            views.setTextViewText(R.id.widget_description, description);
-            views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
-            views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
+            if (full || (push.changes & CHANGED_LOW) != 0) {
+                views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
+            }
+
+            int[] pushWidgetIds = new int[push.ids.size()];
+            for (int i = 0; i < pushWidgetIds.length; i++) {
+                pushWidgetIds[i] = push.ids.get(i);
+                editor.putInt(pushWidgetIds[i] + KEY_LAYOUT, push.layoutId);
+                editor.putInt(pushWidgetIds[i] + KEY_ICON, weatherArtResourceId);
+                editor.putString(pushWidgetIds[i] + KEY_DESCRIPTION, description);
+                editor.putString(pushWidgetIds[i] + KEY_HIGH, formattedMaxTemperature);
+                editor.putString(pushWidgetIds[i] + KEY_LOW, formattedMinTemperature);
+            }
+
+            if (full) {
+                // Create an Intent to launch MainActivity
+                Intent launchIntent = new Intent(this, MainActivity.class);
+                PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
+                views.setOnClickPendingIntent(R.id.widget, pendingIntent);
+
+                // Tell the AppWidgetManager to perform an update on these app widgets
+                appWidgetManager.updateAppWidget(pushWidgetIds, views);
+            } else {
+                // Only the views set above get sent and redrawn, the rest of each widget
+                // stays as it is.
+                appWidgetManager.partiallyUpdateAppWidget(pushWidgetIds, views);
+            }
+        }
+        editor.apply();
+    }
+
+    /**
+     * Drops what we remember about widgets that have been removed.
+     */
+    static void forgetWidgets(Context context, int[] appWidgetIds) {
+        SharedPreferences.Editor editor =
+                context.getSharedPreferences(STATE_PREFS, MODE_PRIVATE).edit();
+        for (int appWidgetId : appWidgetIds) {
+            editor.remove(appWidgetId + KEY_LAYOUT);
+            editor.remove(appWidgetId + KEY_ICON);
+            editor.remove(appWidgetId + KEY_DESCRIPTION);
+            editor.remove(appWidgetId + KEY_HIGH);
+            editor.remove(appWidgetId + KEY_LOW);
+        }
+        editor.apply();
+    }
+
+    private static Push getPush(List<Push> pushes, int layoutId, int changes) {
+        for (Push push : pushes) {
+            if (push.layoutId == layoutId && push.changes == changes) {
+                return push;
+            }
+        }
+        Push push = new Push(layoutId, changes);
+        pushes.add(push);
+        return push;
+    }
 
-            // Create an Intent to launch MainActivity
-            Intent launchIntent = new Intent(this, MainActivity.class);
-            PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
-            views.setOnClickPendingIntent(R.id.widget, pendingIntent);
+    private static boolean contains(int[] ids, int id) {
+        if (ids != null) {
+            for (int candidate : ids) {
+                if (candidate == id) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
 
-            // Tell the AppWidgetManager to perform an update on the current app widget
-            appWidgetManager.updateAppWidget(appWidgetId, views);
+    private int getLayoutId(AppWidgetManager appWidgetManager, int appWidgetId) {
+        // Find the correct layout based on the widget's width
+        int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetId);
+        if (widgetWidth >= mLargeWidth) {
+            return R.layout.widget_today_large;
+        } else if (widgetWidth >= mDefaultWidth) {
+            return R.layout.widget_today;
+        } else {
+            return R.layout.widget_today_small;
         }
     }
 
     private int getWidgetWidth(AppWidgetManager appWidgetManager, int appWidgetId) {
         // Prior to Jelly Bean, widgets were always their default size
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
-            return getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+            return mDefaultWidth;
         }
         // For Jelly Bean and higher devices, widgets can be resized - the current size can be
         // retrieved from the newly added App Widget Options
@@ -141,7 +296,7 @@ public class TodayWidgetIntentService extends IntentService {
             return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, minWidthDp,
                     displayMetrics);
         }
-        return  getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+        return mDefaultWidth;
     }
 
     @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
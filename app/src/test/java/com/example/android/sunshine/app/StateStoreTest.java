@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class StateStoreTest implements SharedPreferences.OnSharedPreferenceChangeListener {
+    private Context mContext;
+    private SharedPreferences mPrefs;
+    private final List<String> mChangedKeys = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mPrefs.registerOnSharedPreferenceChangeListener(this);
+    }
+
+    @After
+    public void tearDown() {
+        mPrefs.unregisterOnSharedPreferenceChangeListener(this);
+    }
+
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+        mChangedKeys.add(key);
+    }
+
+    @Test
+    public void testLocationStatus() {
+        StateStore.setLocationStatus(mContext, SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN);
+        // Readable and heard by listeners as soon as it's set
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN,
+                Utility.getLocationStatus(mContext));
+        assertEquals(1, mChangedKeys.size());
+
+        // The same status again writes nothing
+        StateStore.setLocationStatus(mContext, SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN);
+        assertEquals(1, mChangedKeys.size());
+
+        Utility.resetLocationStatus(mContext);
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN,
+                Utility.getLocationStatus(mContext));
+        assertEquals(2, mChangedKeys.size());
+    }
+
+    @Test
+    public void testLocation() {
+        StateStore.setLocation(mContext, "Mountain View, CA", 37.39f, -122.08f);
+        assertEquals("Mountain View, CA", Utility.getPreferredLocation(mContext));
+        assertTrue(Utility.isLocationLatLonAvailable(mContext));
+        assertEquals(37.39f, Utility.getLocationLatitude(mContext), 0);
+        assertEquals(-122.08f, Utility.getLocationLongitude(mContext), 0);
+
+        StateStore.clearLocationCoordinates(mContext);
+        assertFalse(Utility.isLocationLatLonAvailable(mContext));
+        int changes = mChangedKeys.size();
+        StateStore.clearLocationCoordinates(mContext);
+        assertEquals(changes, mChangedKeys.size());
+    }
+
+    @Test
+    public void testLastNotification() {
+        StateStore.setLastNotification(mContext, 1234L);
+        assertEquals(1234L, mPrefs.getLong(mContext.getString(R.string.pref_last_notification), 0));
+    }
+}
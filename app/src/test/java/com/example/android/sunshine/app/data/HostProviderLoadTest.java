@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.os.Build;
+
+import com.example.android.sunshine.app.BuildConfig;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+
+/*
+    Load tests for the provider with many locations, and with readers and a writer at the same
+    time the way the forecast list, widgets and sync adapter use it.  Each test prints how long
+    its phases took, prefixed with "load:", so that data layer changes can be timed without a
+    device.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class HostProviderLoadTest {
+    private static final int LOCATIONS = 100;
+    private static final int DAYS = 365;
+
+    private static final int READERS = 4;
+    private static final int WRITE_ROUNDS = 20;
+
+    private WeatherProvider mProvider;
+    private ContentResolver mResolver;
+    private long[] mLocationIds;
+
+    @Before
+    public void setUp() {
+        mProvider = HostTestData.registerProvider(RuntimeEnvironment.application);
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+        mLocationIds = new long[LOCATIONS];
+        for (int i = 0; i < LOCATIONS; i++) {
+            mLocationIds[i] = HostTestData.insertLocation(mResolver, i);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mProvider.shutdown();
+    }
+
+    @Test
+    public void testManyLocations() {
+        long start = System.nanoTime();
+        for (int i = 0; i < LOCATIONS; i++) {
+            assertEquals(DAYS, mResolver.bulkInsert(WeatherEntry.CONTENT_URI,
+                    HostTestData.weatherRows(mLocationIds[i], DAYS, 0)));
+        }
+        report("bulk_insert", LOCATIONS * DAYS, start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < LOCATIONS; i++) {
+            Cursor cursor = queryForecast(i);
+            assertEquals(DAYS, cursor.getCount());
+            cursor.close();
+        }
+        report("forecast_query", LOCATIONS * DAYS, start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < LOCATIONS; i++) {
+            Cursor cursor = mResolver.query(
+                    WeatherEntry.buildWeatherLocationWithDate(HostTestData.locationSetting(i),
+                            HostTestData.START_DATE + (i % DAYS) * HostTestData.DAY_IN_MILLIS),
+                    null, null, null, null);
+            assertEquals(1, cursor.getCount());
+            cursor.close();
+        }
+        report("day_query", LOCATIONS, start);
+
+        // What the sync adapter does after every sync: drop the days before today
+        start = System.nanoTime();
+        int deleted = mResolver.delete(WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_DATE + " < ?",
+                new String[]{Long.toString(
+                        HostTestData.START_DATE + 30 * HostTestData.DAY_IN_MILLIS)});
+        report("delete_old", deleted, start);
+        assertEquals(LOCATIONS * 30, deleted);
+    }
+
+    /*
+        A writer replaces every location's forecast round after round while readers query it.
+        Each bulkInsert is one transaction, so a reader must always see every day of a location,
+        all from the same round.
+     */
+    @Test
+    public void testConcurrentReadersAndWriter() throws Exception {
+        for (int i = 0; i < LOCATIONS; i++) {
+            mResolver.bulkInsert(WeatherEntry.CONTENT_URI,
+                    HostTestData.weatherRows(mLocationIds[i], DAYS, 0));
+        }
+
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(READERS + 1);
+        List<Future<Integer>> readers = new ArrayList<>();
+        long start = System.nanoTime();
+        try {
+            Future<Integer> writer = executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    try {
+                        int rows = 0;
+                        for (int round = 1; round <= WRITE_ROUNDS; round++) {
+                            for (int i = 0; i < LOCATIONS; i++) {
+                                rows += mResolver.bulkInsert(WeatherEntry.CONTENT_URI,
+                                        HostTestData.weatherRows(mLocationIds[i], DAYS, round));
+                            }
+                        }
+                        return rows;
+                    } finally {
+                        writing.set(false);
+                    }
+                }
+            });
+            for (int r = 0; r < READERS; r++) {
+                final int firstLocation = r;
+                readers.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        int reads = 0;
+                        for (int i = firstLocation; writing.get(); i = (i + 1) % LOCATIONS) {
+                            assertConsistentForecast(i);
+                            reads++;
+                        }
+                        return reads;
+                    }
+                }));
+            }
+
+            // get() rethrows anything a reader or the writer failed with
+            assertEquals(WRITE_ROUNDS * LOCATIONS * DAYS, (int) writer.get());
+            int reads = 0;
+            for (Future<Integer> reader : readers) {
+                reads += reader.get();
+            }
+            report("concurrent_write", WRITE_ROUNDS * LOCATIONS * DAYS, start);
+            System.out.println(String.format(Locale.US, "load: concurrent_read %d forecasts",
+                    reads));
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private void assertConsistentForecast(int location) {
+        Cursor cursor = queryForecast(location);
+        try {
+            assertEquals("Error: Saw a partly written forecast", DAYS, cursor.getCount());
+            cursor.moveToFirst();
+            // Day 0 tells which round this forecast is from
+            double round = cursor.getDouble(0) - HostTestData.high(0, 0);
+            for (int i = 1; cursor.moveToNext(); i++) {
+                assertEquals("Error: Saw days from different syncs in one forecast",
+                        HostTestData.high(i, 0) + round, cursor.getDouble(0), 0);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Cursor queryForecast(int location) {
+        return mResolver.query(
+                WeatherEntry.buildWeatherLocationWithStartDate(
+                        HostTestData.locationSetting(location), HostTestData.START_DATE),
+                new String[]{WeatherEntry.COLUMN_MAX_TEMP},
+                null, null, WeatherEntry.COLUMN_DATE + " ASC");
+    }
+
+    private static void report(String phase, int rows, long startNanos) {
+        long micros = (System.nanoTime() - startNanos) / 1000;
+        System.out.println(String.format(Locale.US, "load: %s %d rows in %d ms (%.2f us/row)",
+                phase, rows, micros / 1000, rows == 0 ? 0.0 : (double) micros / rows));
+    }
+}
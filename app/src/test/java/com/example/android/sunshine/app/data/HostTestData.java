@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.text.format.Time;
+
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.util.Locale;
+
+/*
+    Data and setup shared by the host tests.  The forecasts are made up but the same on every
+    run, so that timings printed by the load tests can be compared.
+ */
+class HostTestData {
+    static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    // December 20th, 2014
+    static final long START_DATE = WeatherContract.normalizeDate(1419033600000L);
+
+    private static final int[] WEATHER_IDS = {200, 301, 500, 600, 701, 800, 801, 803};
+    private static final String[] DESCRIPTIONS =
+            {"Thunderstorm", "Drizzle", "Rain", "Snow", "Mist", "Clear", "Clouds", "Clouds"};
+
+    /*
+        Creates a WeatherProvider on the application context and makes the content resolver
+        hand it every request for the weather authority, as the framework would on a device.
+     */
+    static WeatherProvider registerProvider(Context context) {
+        WeatherProvider provider = new WeatherProvider();
+        // Calls onCreate
+        provider.attachInfo(context, null);
+        ShadowContentResolver.registerProvider(WeatherContract.CONTENT_AUTHORITY, provider);
+        return provider;
+    }
+
+    /*
+        The Julian day of START_DATE, which is what the sync adapter passes the parser.
+     */
+    static int startJulianDay() {
+        Time time = new Time();
+        time.set(START_DATE);
+        return Time.getJulianDay(START_DATE, time.gmtoff);
+    }
+
+    static String locationSetting(int location) {
+        return String.format(Locale.US, "%05d", 10000 + location);
+    }
+
+    static long insertLocation(ContentResolver resolver, int location) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                locationSetting(location));
+        values.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, "City " + location);
+        values.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, -60 + location % 120);
+        values.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, -170 + location % 340);
+        return ContentUris.parseId(
+                resolver.insert(WeatherContract.LocationEntry.CONTENT_URI, values));
+    }
+
+    static double high(int day, int round) {
+        return 15 + (day * 7 % 23) / 2.0 + round;
+    }
+
+    /*
+        One row per day for a location, the way the sync adapter hands them to bulkInsert.
+        Rows written in a later round replace the earlier ones with different temperatures.
+     */
+    static ContentValues[] weatherRows(long locationId, int days, int round) {
+        ContentValues[] rows = new ContentValues[days];
+        for (int i = 0; i < days; i++) {
+            ContentValues values = new ContentValues();
+            values.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+            values.put(WeatherContract.WeatherEntry.COLUMN_DATE, START_DATE + i * DAY_IN_MILLIS);
+            values.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, i * 37 % 360);
+            values.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, 40 + i % 50);
+            values.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, 1000 + i % 30);
+            values.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high(i, round));
+            values.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, high(i, round) - 8);
+            values.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+                    DESCRIPTIONS[i % DESCRIPTIONS.length]);
+            values.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, 1.5 + i % 10);
+            values.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+                    WEATHER_IDS[i % WEATHER_IDS.length]);
+            rows[i] = values;
+        }
+        return rows;
+    }
+
+    /*
+        An OpenWeatherMap daily forecast response with the given number of days.
+     */
+    static String owmJson(int days) {
+        StringBuilder json = new StringBuilder(days * 200 + 200);
+        json.append("{\"city\":{\"id\":5375480,\"name\":\"Mountain View\",")
+                .append("\"coord\":{\"lon\":-122.083847,\"lat\":37.386051},\"country\":\"US\"},")
+                .append("\"cod\":\"200\",\"cnt\":").append(days).append(",\"list\":[");
+        for (int i = 0; i < days; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(String.format(Locale.US, "{\"dt\":%d,"
+                            + "\"temp\":{\"day\":%.2f,\"min\":%.2f,\"max\":%.2f},"
+                            + "\"pressure\":%d,\"humidity\":%d,"
+                            + "\"weather\":[{\"id\":%d,\"main\":\"%s\",\"icon\":\"01d\"}],"
+                            + "\"speed\":%.2f,\"deg\":%d}",
+                    (START_DATE + i * DAY_IN_MILLIS) / 1000, high(i, 0) - 2, high(i, 0) - 8,
+                    high(i, 0), 1000 + i % 30, 40 + i % 50, WEATHER_IDS[i % WEATHER_IDS.length],
+                    DESCRIPTIONS[i % DESCRIPTIONS.length], 1.5 + i % 10, i * 37 % 360));
+        }
+        json.append("]}");
+        return json.toString();
+    }
+}
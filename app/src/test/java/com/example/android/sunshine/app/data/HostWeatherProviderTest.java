@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.Build;
+
+import com.example.android.sunshine.app.BuildConfig;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.SyncHistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.sync.ForecastJsonParser;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.net.HttpURLConnection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/*
+    The basic provider round trips of TestProvider, plus the sync adapter's parse and insert
+    path, on the JVM against a real SQLite database.  These run with
+    ./gradlew :app:testDebugUnitTest instead of needing a device.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class HostWeatherProviderTest {
+    private static final int DAYS = 14;
+
+    private WeatherProvider mProvider;
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mProvider = HostTestData.registerProvider(RuntimeEnvironment.application);
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @After
+    public void tearDown() {
+        mProvider.shutdown();
+    }
+
+    @Test
+    public void testInsertReadProvider() {
+        long locationId = HostTestData.insertLocation(mResolver, 0);
+        assertTrue(locationId != -1);
+
+        ContentValues weather = HostTestData.weatherRows(locationId, 1, 0)[0];
+        assertNotNull(mResolver.insert(WeatherEntry.CONTENT_URI, weather));
+
+        Cursor cursor = mResolver.query(
+                WeatherEntry.buildWeatherLocationWithDate(HostTestData.locationSetting(0),
+                        HostTestData.START_DATE),
+                new String[]{WeatherEntry.COLUMN_MAX_TEMP, WeatherEntry.COLUMN_SHORT_DESC,
+                        LocationEntry.COLUMN_CITY_NAME},
+                null, null, null);
+        assertTrue("Error: No joined weather and location for the day", cursor.moveToFirst());
+        assertEquals(weather.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP), cursor.getDouble(0), 0);
+        assertEquals(weather.getAsString(WeatherEntry.COLUMN_SHORT_DESC), cursor.getString(1));
+        assertEquals("City 0", cursor.getString(2));
+        cursor.close();
+    }
+
+    @Test
+    public void testBulkInsertReplacesDays() {
+        long locationId = HostTestData.insertLocation(mResolver, 0);
+        assertEquals(DAYS, mResolver.bulkInsert(WeatherEntry.CONTENT_URI,
+                HostTestData.weatherRows(locationId, DAYS, 0)));
+        // The same days again, as the next sync would write them
+        assertEquals(DAYS, mResolver.bulkInsert(WeatherEntry.CONTENT_URI,
+                HostTestData.weatherRows(locationId, DAYS, 1)));
+
+        Cursor cursor = mResolver.query(
+                WeatherEntry.buildWeatherLocationWithStartDate(HostTestData.locationSetting(0),
+                        HostTestData.START_DATE),
+                new String[]{WeatherEntry.COLUMN_MAX_TEMP},
+                null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals("Error: A day was stored twice", DAYS, cursor.getCount());
+        for (int i = 0; cursor.moveToNext(); i++) {
+            assertEquals(HostTestData.high(i, 1), cursor.getDouble(0), 0);
+        }
+        cursor.close();
+    }
+
+    @Test
+    public void testUpdateAndDelete() {
+        long locationId = HostTestData.insertLocation(mResolver, 0);
+        mResolver.bulkInsert(WeatherEntry.CONTENT_URI,
+                HostTestData.weatherRows(locationId, DAYS, 0));
+
+        ContentValues values = new ContentValues();
+        values.put(WeatherEntry.COLUMN_SHORT_DESC, "Hail");
+        assertEquals(DAYS, mResolver.update(WeatherEntry.CONTENT_URI, values,
+                WeatherEntry.COLUMN_LOC_KEY + " = ?", new String[]{Long.toString(locationId)}));
+
+        assertEquals(DAYS, mResolver.delete(WeatherEntry.CONTENT_URI, null, null));
+        assertEquals(1, mResolver.delete(LocationEntry.CONTENT_URI, null, null));
+    }
+
+    @Test
+    public void testSyncParseAndInsert() throws Exception {
+        ForecastJsonParser.Forecast forecast = ForecastJsonParser.parse(
+                HostTestData.owmJson(DAYS), HostTestData.startJulianDay());
+        assertEquals(HttpURLConnection.HTTP_OK, forecast.errorCode);
+        assertEquals("Mountain View", forecast.cityName);
+        assertEquals(DAYS, forecast.days.length);
+
+        // What SunshineSyncAdapter.getWeatherDataFromJson does with the parsed days
+        long locationId = HostTestData.insertLocation(mResolver, 0);
+        for (ContentValues day : forecast.days) {
+            day.put(WeatherEntry.COLUMN_LOC_KEY, locationId);
+        }
+        assertEquals(DAYS, mResolver.bulkInsert(WeatherEntry.CONTENT_URI, forecast.days));
+
+        Cursor cursor = mResolver.query(
+                WeatherEntry.buildWeatherLocationWithStartDate(HostTestData.locationSetting(0),
+                        HostTestData.START_DATE),
+                new String[]{WeatherEntry.COLUMN_DATE, WeatherEntry.COLUMN_MAX_TEMP},
+                null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals(DAYS, cursor.getCount());
+        for (int i = 0; cursor.moveToNext(); i++) {
+            assertEquals(HostTestData.START_DATE + i * HostTestData.DAY_IN_MILLIS,
+                    cursor.getLong(0));
+            assertEquals(HostTestData.high(i, 0), cursor.getDouble(1), 0.005);
+        }
+        cursor.close();
+    }
+
+    @Test
+    public void testSyncHistoryRetention() {
+        int runs = SyncHistoryEntry.MAX_ROWS + 10;
+        for (int i = 0; i < runs; i++) {
+            assertNotNull(mResolver.insert(SyncHistoryEntry.CONTENT_URI, syncHistoryRow(i)));
+        }
+
+        Cursor cursor = mResolver.query(SyncHistoryEntry.CONTENT_URI,
+                new String[]{SyncHistoryEntry.COLUMN_START_TIME}, null, null,
+                SyncHistoryEntry._ID + " ASC");
+        assertEquals("Error: Old runs were kept", SyncHistoryEntry.MAX_ROWS, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Error: The oldest runs weren't the ones dropped",
+                runs - SyncHistoryEntry.MAX_ROWS, cursor.getLong(0));
+        assertTrue(cursor.moveToLast());
+        assertEquals(runs - 1, cursor.getLong(0));
+        cursor.close();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSyncHistoryIsAppendOnly() {
+        mResolver.insert(SyncHistoryEntry.CONTENT_URI, syncHistoryRow(0));
+        mResolver.update(SyncHistoryEntry.CONTENT_URI, syncHistoryRow(1), null, null);
+    }
+
+    @Test
+    public void testParseError() throws Exception {
+        ForecastJsonParser.Forecast forecast = ForecastJsonParser.parse(
+                "{\"cod\":\"404\",\"message\":\"Error: Not found city\"}", 0);
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND, forecast.errorCode);
+        assertEquals(0, forecast.days.length);
+    }
+
+    private static ContentValues syncHistoryRow(long startTime) {
+        ContentValues values = new ContentValues();
+        values.put(SyncHistoryEntry.COLUMN_START_TIME, startTime);
+        values.put(SyncHistoryEntry.COLUMN_END_TIME, startTime + 1);
+        values.put(SyncHistoryEntry.COLUMN_BYTES_FETCHED, 3723);
+        values.put(SyncHistoryEntry.COLUMN_ROWS_INSERTED, DAYS);
+        values.put(SyncHistoryEntry.COLUMN_ROWS_UPDATED, 0);
+        values.put(SyncHistoryEntry.COLUMN_ROWS_DELETED, 0);
+        values.put(SyncHistoryEntry.COLUMN_STATUS, 0);
+        values.put(SyncHistoryEntry.COLUMN_LOCATION_SETTING, HostTestData.locationSetting(0));
+        values.put(SyncHistoryEntry.COLUMN_TRIGGER, SyncHistoryEntry.TRIGGER_PERIODIC);
+        return values;
+    }
+}
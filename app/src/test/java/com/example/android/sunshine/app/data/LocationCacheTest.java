@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.Context;
+import android.os.Build;
+
+import com.example.android.sunshine.app.BuildConfig;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class LocationCacheTest {
+    private static final long MOUNTAIN_VIEW_ID = 5375480;
+    private static final long PORTLAND_OR_ID = 5746545;
+    private static final long PORTLAND_ME_ID = 4975802;
+
+    private Context mContext;
+    private LocationCache mCache;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mCache = new LocationCache(mContext);
+    }
+
+    @Test
+    public void testNormalize() {
+        assertEquals("mountain view ca", LocationCache.normalize("  Mountain View, CA "));
+        assertEquals("94043", LocationCache.normalize("94043"));
+        assertEquals("", LocationCache.normalize(" ,. "));
+    }
+
+    @Test
+    public void testResolveCity() {
+        mCache.putCity("Mountain View, CA", MOUNTAIN_VIEW_ID, "Mountain View", 37.39, -122.08);
+
+        LocationCache.Entry entry = mCache.resolve("mountain view ca");
+        assertNotNull(entry);
+        assertTrue(entry.valid);
+        assertFalse(entry.isPickedPlace());
+        assertEquals(MOUNTAIN_VIEW_ID, entry.cityId);
+        assertEquals("Mountain View", entry.cityName);
+        // By the name the server gave the city
+        assertEquals(MOUNTAIN_VIEW_ID, mCache.resolve("MOUNTAIN VIEW").cityId);
+        assertNull(mCache.resolve("Mountain Vi"));
+        assertNull(mCache.resolve("Sunnyvale"));
+    }
+
+    @Test
+    public void testResolvePrefix() {
+        mCache.putCity("Portland, OR", PORTLAND_OR_ID, "Portland Oregon", 45.52, -122.68);
+        assertEquals(PORTLAND_OR_ID, mCache.resolve("portland").cityId);
+
+        // Once it could be either city, it isn't guessed
+        mCache.putCity("Portland, ME", PORTLAND_ME_ID, "Portland Maine", 43.66, -70.26);
+        assertNull(mCache.resolve("portland"));
+        assertEquals(PORTLAND_ME_ID, mCache.resolve("Portland ME").cityId);
+        // Only whole words count
+        assertNull(mCache.resolve("portl"));
+    }
+
+    @Test
+    public void testInvalidAndPickedPlaces() {
+        mCache.putInvalid("Atlantis");
+        LocationCache.Entry entry = mCache.resolve("atlantis");
+        assertNotNull(entry);
+        assertFalse(entry.valid);
+
+        mCache.putPlace("1600 Amphitheatre Pkwy", 37.42, -122.08);
+        entry = mCache.resolve("1600 amphitheatre pkwy");
+        assertTrue(entry.isPickedPlace());
+        assertEquals(37.42, entry.latitude, 0);
+
+        // Neither is matched by the first words alone
+        mCache.putInvalid("Springfield Nowhere");
+        assertNull(mCache.resolve("Springfield"));
+        assertNull(mCache.resolve("1600"));
+    }
+
+    @Test
+    public void testInvalidExpires() {
+        long now = System.currentTimeMillis();
+        mCache.putInvalid("Atlantis", now - LocationCache.INVALID_TTL_MS - 1);
+        // Long enough ago that the server gets asked again
+        assertNull(mCache.resolve("Atlantis"));
+
+        mCache.putInvalid("Lemuria", now - LocationCache.INVALID_TTL_MS / 2);
+        assertFalse(mCache.resolve("Lemuria").valid);
+        assertFalse(new LocationCache(mContext).resolve("Lemuria").valid);
+    }
+
+    @Test
+    public void testLruEviction() {
+        for (int i = 0; i < LocationCache.MAX_ENTRIES; i++) {
+            mCache.putInvalid("place " + i);
+        }
+        // Using the oldest makes "place 1" the least recently used instead
+        assertNotNull(mCache.resolve("place 0"));
+        mCache.putInvalid("one too many");
+
+        assertEquals(LocationCache.MAX_ENTRIES, mCache.size());
+        assertNotNull(mCache.resolve("place 0"));
+        assertNull(mCache.resolve("place 1"));
+        assertNotNull(mCache.resolve("one too many"));
+    }
+
+    @Test
+    public void testPersisted() {
+        mCache.putCity("Mountain View, CA", MOUNTAIN_VIEW_ID, "Mountain View", 37.39, -122.08);
+        mCache.putInvalid("Atlantis");
+
+        LocationCache reloaded = new LocationCache(mContext);
+        assertEquals(mCache.size(), reloaded.size());
+        LocationCache.Entry entry = reloaded.resolve("Mountain View CA");
+        assertEquals(MOUNTAIN_VIEW_ID, entry.cityId);
+        assertEquals(-122.08, entry.longitude, 0);
+        assertFalse(reloaded.resolve("Atlantis").valid);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.perf;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/*
+    Metrics is plain Java apart from its JSON dump, so this runs without Robolectric.
+ */
+public class MetricsTest {
+    private static final String TEST_HISTOGRAM = "test.histogram";
+    private static final String TEST_COUNTER = "test.counter";
+
+    @After
+    public void tearDown() {
+        Metrics.reset();
+    }
+
+    @Test
+    public void testPercentiles() {
+        for (int micros = 1; micros <= 1000; micros++) {
+            Metrics.recordMicros(TEST_HISTOGRAM, micros);
+        }
+        Metrics.Histogram histogram = Metrics.histograms().get(TEST_HISTOGRAM);
+        assertEquals(1000, histogram.count());
+        assertEquals(500, histogram.meanMicros());
+        assertEquals(1000, histogram.maxMicros());
+        assertWithinBucket(500, histogram.percentileMicros(50));
+        assertWithinBucket(900, histogram.percentileMicros(90));
+        assertWithinBucket(990, histogram.percentileMicros(99));
+    }
+
+    @Test
+    public void testEmptyAndZero() {
+        Metrics.recordMicros(TEST_HISTOGRAM, 0);
+        Metrics.Histogram histogram = Metrics.histograms().get(TEST_HISTOGRAM);
+        assertEquals(0, histogram.percentileMicros(50));
+        assertEquals(0, histogram.maxMicros());
+    }
+
+    @Test
+    public void testAdd() {
+        Metrics.increment(TEST_COUNTER);
+        Metrics.add(TEST_COUNTER, 3);
+        assertEquals(4, (long) Metrics.counters().get(TEST_COUNTER));
+    }
+
+    @Test
+    public void testConcurrentRecording() throws Exception {
+        final int threads = 8;
+        final int perThread = 10000;
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perThread; i++) {
+                        Metrics.increment(TEST_COUNTER);
+                        Metrics.recordMicros(TEST_HISTOGRAM, i);
+                    }
+                }
+            };
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(threads * perThread, (long) Metrics.counters().get(TEST_COUNTER));
+        Metrics.Histogram histogram = Metrics.histograms().get(TEST_HISTOGRAM);
+        assertEquals(threads * perThread, histogram.count());
+        assertEquals(perThread - 1, histogram.maxMicros());
+    }
+
+    private static void assertWithinBucket(long expected, long actual) {
+        // Buckets are a quarter of a power of two wide and we report their lower bound
+        assertTrue("Expected about " + expected + " but was " + actual,
+                actual <= expected && actual >= expected * 3 / 4);
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local stand-in for the OpenWeatherMap daily forecast endpoint, so that syncs can be
+ * measured and stress-tested without the network.  It serves either a recorded response
+ * (from the test resources) or a generated forecast of any length, and can be made slow,
+ * throttled or failing:
+ * <ul>
+ *   <li>{@link #setLatencyMillis} waits before answering</li>
+ *   <li>{@link #setBytesPerSecond} trickles the body out at that rate</li>
+ *   <li>{@link #setHttpStatus} answers with another HTTP status</li>
+ *   <li>{@link #setCod} answers 200 but with an OWM error body, {"cod":"404",...}</li>
+ *   <li>{@link #setDays} / {@link #setRecording} choose the payload</li>
+ * </ul>
+ * Tests point the sync adapter at {@link #getBaseUrl()}.  It can also be run on its own for
+ * an emulator, with the app built with
+ * -PforecastBaseUrl=http://10.0.2.2:8089/data/2.5/forecast/daily:
+ * <pre>
+ *   java -cp ... com.example.android.sunshine.app.sync.MockOwmServer [port] [days] [latencyMs]
+ * </pre>
+ */
+public class MockOwmServer {
+    public static final String FORECAST_PATH = "/data/2.5/forecast/daily";
+    public static final String DEFAULT_RECORDING = "owm/daily_94043_14.json";
+    private static final int DEFAULT_PORT = 8089;
+    private static final int CHUNK_SIZE = 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int[] WEATHER_IDS = {200, 301, 500, 511, 600, 701, 800, 801, 803};
+    private static final String[] DESCRIPTIONS = {"Thunderstorm", "Drizzle", "Rain", "Snow",
+            "Snow", "Mist", "Clear", "Clouds", "Clouds"};
+
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+    private HttpServer mServer;
+
+    private volatile long mLatencyMillis;
+    private volatile int mBytesPerSecond;
+    private volatile int mHttpStatus = HttpURLConnection.HTTP_OK;
+    private volatile int mCod = HttpURLConnection.HTTP_OK;
+    // A generated forecast of this many days, or the recording when 0
+    private volatile int mDays;
+    private volatile String mRecording = DEFAULT_RECORDING;
+    private volatile String mLastQuery;
+
+    public void start() throws IOException {
+        start(0);
+    }
+
+    /**
+     * @param port the port to listen on, or 0 for any free one
+     */
+    public void start(int port) throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress(port), 0);
+        mServer.createContext(FORECAST_PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    respond(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        // A thread per request, so that a slow response doesn't hold up the next one
+        mServer.setExecutor(Executors.newCachedThreadPool());
+        mServer.start();
+    }
+
+    public void stop() {
+        if (mServer != null) {
+            mServer.stop(0);
+            mServer = null;
+        }
+    }
+
+    public String getBaseUrl() {
+        return "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":"
+                + mServer.getAddress().getPort() + FORECAST_PATH;
+    }
+
+    public void setLatencyMillis(long latencyMillis) {
+        mLatencyMillis = latencyMillis;
+    }
+
+    /**
+     * @param bytesPerSecond how fast to send the body, or 0 for as fast as possible
+     */
+    public void setBytesPerSecond(int bytesPerSecond) {
+        mBytesPerSecond = bytesPerSecond;
+    }
+
+    public void setHttpStatus(int httpStatus) {
+        mHttpStatus = httpStatus;
+    }
+
+    public void setCod(int cod) {
+        mCod = cod;
+    }
+
+    /**
+     * Serve a generated forecast of {@code days} days.
+     */
+    public void setDays(int days) {
+        mDays = days;
+    }
+
+    /**
+     * Serve a recorded response from the test resources.
+     */
+    public void setRecording(String resourceName) {
+        mRecording = resourceName;
+        mDays = 0;
+    }
+
+    public int getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * @return the query string of the last request, e.g. "q=94043&mode=json&..."
+     */
+    public String getLastQuery() {
+        return mLastQuery;
+    }
+
+    /**
+     * @return the size of the body a successful request is currently answered with
+     */
+    public int getPayloadSize() throws IOException {
+        return payload().length;
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        mRequestCount.incrementAndGet();
+        mLastQuery = exchange.getRequestURI().getRawQuery();
+        try {
+            Thread.sleep(mLatencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        int status = mHttpStatus;
+        byte[] body;
+        if (status != HttpURLConnection.HTTP_OK) {
+            body = errorBody(status);
+        } else if (mCod != HttpURLConnection.HTTP_OK) {
+            body = errorBody(mCod);
+        } else {
+            body = payload();
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+
+        OutputStream out = exchange.getResponseBody();
+        int bytesPerSecond = mBytesPerSecond;
+        for (int offset = 0; offset < body.length; offset += CHUNK_SIZE) {
+            int length = Math.min(CHUNK_SIZE, body.length - offset);
+            out.write(body, offset, length);
+            out.flush();
+            if (bytesPerSecond > 0) {
+                try {
+                    Thread.sleep(length * 1000L / bytesPerSecond);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+        out.close();
+    }
+
+    private byte[] payload() throws IOException {
+        int days = mDays;
+        if (days > 0) {
+            return forecastJson(days).getBytes(UTF_8);
+        }
+        InputStream in = MockOwmServer.class.getClassLoader().getResourceAsStream(mRecording);
+        if (in == null) {
+            throw new IOException("No recording " + mRecording);
+        }
+        try {
+            ByteArrayOutputStream recording = new ByteArrayOutputStream();
+            byte[] buffer = new byte[CHUNK_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                recording.write(buffer, 0, read);
+            }
+            return recording.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static byte[] errorBody(int cod) {
+        // What OWM sends, e.g. for an unknown city
+        return String.format(Locale.US, "{\"cod\":\"%d\",\"message\":\"Error: %s\"}", cod,
+                cod == HttpURLConnection.HTTP_NOT_FOUND ? "Not found city" : "Internal error")
+                .getBytes(UTF_8);
+    }
+
+    /**
+     * A made-up OWM daily forecast response of {@code days} days, the same on every call.
+     */
+    public static String forecastJson(int days) {
+        StringBuilder json = new StringBuilder(days * 260 + 200);
+        json.append("{\"city\":{\"id\":5375480,\"name\":\"Mountain View\",")
+                .append("\"coord\":{\"lon\":-122.083847,\"lat\":37.386051},\"country\":\"US\",")
+                .append("\"population\":0},\"cod\":\"200\",\"message\":0.0123,\"cnt\":")
+                .append(days).append(",\"list\":[");
+        for (int i = 0; i < days; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            double high = 15 + (i * 7 % 23) / 2.0;
+            double low = high - 4 - i % 9;
+            int weather = i % WEATHER_IDS.length;
+            json.append(String.format(Locale.US, "{\"dt\":%d,\"temp\":{\"day\":%.2f,"
+                            + "\"min\":%.2f,\"max\":%.2f,\"night\":%.2f,\"eve\":%.2f,"
+                            + "\"morn\":%.2f},\"pressure\":%.2f,\"humidity\":%d,"
+                            + "\"weather\":[{\"id\":%d,\"main\":\"%s\",\"description\":\"%s\","
+                            + "\"icon\":\"01d\"}],\"speed\":%.2f,\"deg\":%d,\"clouds\":%d}",
+                    1451649600L + i * 86400L, high - 1, low, high, low + 1, high - 2, low + 2,
+                    1000 + i % 30 + 0.25, 40 + i % 50, WEATHER_IDS[weather],
+                    DESCRIPTIONS[weather], DESCRIPTIONS[weather].toLowerCase(Locale.US),
+                    1.5 + i % 10, i * 37 % 360, i % 100));
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        MockOwmServer server = new MockOwmServer();
+        if (args.length > 1) {
+            server.setDays(Integer.parseInt(args[1]));
+        }
+        if (args.length > 2) {
+            server.setLatencyMillis(Long.parseLong(args[2]));
+        }
+        server.start(args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT);
+        System.out.println("Serving forecasts at " + server.getBaseUrl());
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.SyncResult;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.Bundle;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.app.BuildConfig;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.net.HttpURLConnection;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/*
+    Runs whole syncs, from the HTTP request to the rows in the provider, against MockOwmServer
+    under different network conditions and responses.  Each sync prints its latency and how
+    much the heap grew, prefixed with "sync:", so that changes to the sync path can be
+    compared offline.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class SyncLoadTest {
+    private static final String LOCATION = "94043";
+    private static final int RECORDED_DAYS = 14;
+
+    private Context mContext;
+    private WeatherProvider mProvider;
+    private MockOwmServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mContext = RuntimeEnvironment.application;
+        mProvider = new WeatherProvider();
+        // Calls onCreate
+        mProvider.attachInfo(mContext, null);
+        ShadowContentResolver.registerProvider(WeatherContract.CONTENT_AUTHORITY, mProvider);
+
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(mContext.getString(R.string.pref_location_key), LOCATION)
+                .commit();
+
+        mServer = new MockOwmServer();
+        mServer.start();
+        SunshineSyncAdapter.setForecastBaseUrl(mServer.getBaseUrl());
+    }
+
+    @After
+    public void tearDown() {
+        SunshineSyncAdapter.setForecastBaseUrl(BuildConfig.FORECAST_BASE_URL);
+        mServer.stop();
+        mProvider.shutdown();
+    }
+
+    @Test
+    public void testRecordedForecast() {
+        sync("recorded");
+
+        assertEquals(1, mServer.getRequestCount());
+        assertTrue(mServer.getLastQuery().contains("q=" + LOCATION));
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK,
+                Utility.getLocationStatus(mContext));
+        assertEquals(RECORDED_DAYS, storedDays());
+    }
+
+    @Test
+    public void testSyncHistory() throws Exception {
+        int recordedSize = mServer.getPayloadSize();
+        sync("history_first");
+        Bundle manual = new Bundle();
+        manual.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
+        new SunshineSyncAdapter(mContext, false).onPerformSync(null, manual,
+                WeatherContract.CONTENT_AUTHORITY, null, new SyncResult());
+        mServer.setCod(HttpURLConnection.HTTP_NOT_FOUND);
+        sync("history_404");
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.SyncHistoryEntry.CONTENT_URI,
+                new String[]{WeatherContract.SyncHistoryEntry.COLUMN_BYTES_FETCHED,
+                        WeatherContract.SyncHistoryEntry.COLUMN_ROWS_INSERTED,
+                        WeatherContract.SyncHistoryEntry.COLUMN_ROWS_UPDATED,
+                        WeatherContract.SyncHistoryEntry.COLUMN_STATUS,
+                        WeatherContract.SyncHistoryEntry.COLUMN_TRIGGER,
+                        WeatherContract.SyncHistoryEntry.COLUMN_LOCATION_SETTING},
+                null, null, WeatherContract.SyncHistoryEntry._ID + " ASC");
+        try {
+            assertEquals(3, cursor.getCount());
+
+            // A first sync adds every day
+            assertTrue(cursor.moveToNext());
+            assertEquals(recordedSize, cursor.getLong(0));
+            assertEquals(RECORDED_DAYS, cursor.getInt(1));
+            assertEquals(0, cursor.getInt(2));
+            assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, cursor.getInt(3));
+            assertEquals(WeatherContract.SyncHistoryEntry.TRIGGER_PERIODIC, cursor.getString(4));
+            assertEquals(LOCATION, cursor.getString(5));
+
+            // The same response again replaces them
+            assertTrue(cursor.moveToNext());
+            assertEquals(0, cursor.getInt(1));
+            assertEquals(RECORDED_DAYS, cursor.getInt(2));
+            assertEquals(WeatherContract.SyncHistoryEntry.TRIGGER_MANUAL, cursor.getString(4));
+
+            assertTrue(cursor.moveToNext());
+            assertEquals(0, cursor.getInt(1) + cursor.getInt(2));
+            assertEquals(SunshineSyncAdapter.LOCATION_STATUS_INVALID, cursor.getInt(3));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void testLatency() {
+        mServer.setLatencyMillis(500);
+        long millis = sync("latency_500ms");
+
+        assertTrue(millis >= 500);
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK,
+                Utility.getLocationStatus(mContext));
+        assertEquals(RECORDED_DAYS, storedDays());
+    }
+
+    @Test
+    public void testThrottled() throws Exception {
+        // Slow enough to stretch the recording over a second or so
+        int bytesPerSecond = 4 * 1024;
+        mServer.setBytesPerSecond(bytesPerSecond);
+        long millis = sync("throttled_4KBps");
+
+        assertTrue(millis >= (mServer.getPayloadSize() - 1024) * 1000L / bytesPerSecond);
+        assertEquals(RECORDED_DAYS, storedDays());
+    }
+
+    @Test
+    public void testLargePayloads() throws Exception {
+        for (int days : new int[]{14, 100, 1000, 5000}) {
+            mServer.setDays(days);
+            sync(String.format(Locale.US, "generated_%d_days_%dKB", days,
+                    mServer.getPayloadSize() / 1024));
+
+            assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK,
+                    Utility.getLocationStatus(mContext));
+            assertEquals(days, storedDays());
+        }
+    }
+
+    @Test
+    public void testCityNotFound() {
+        mServer.setCod(HttpURLConnection.HTTP_NOT_FOUND);
+        sync("cod_404");
+
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_INVALID,
+                Utility.getLocationStatus(mContext));
+        assertEquals(0, storedDays());
+    }
+
+    @Test
+    public void testServerErrorInBody() {
+        mServer.setCod(HttpURLConnection.HTTP_INTERNAL_ERROR);
+        sync("cod_500");
+
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN,
+                Utility.getLocationStatus(mContext));
+        assertEquals(0, storedDays());
+    }
+
+    @Test
+    public void testHttpServerError() {
+        mServer.setHttpStatus(HttpURLConnection.HTTP_UNAVAILABLE);
+        sync("http_503");
+
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN,
+                Utility.getLocationStatus(mContext));
+        assertEquals(0, storedDays());
+    }
+
+    /**
+     * Runs one sync the way the framework would, and prints how it went.
+     *
+     * @return how long the sync took, in milliseconds
+     */
+    private long sync(String condition) {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        long start = System.nanoTime();
+
+        new SunshineSyncAdapter(mContext, false).onPerformSync(null, new Bundle(),
+                WeatherContract.CONTENT_AUTHORITY, null, new SyncResult());
+
+        long millis = (System.nanoTime() - start) / 1000000;
+        long heapGrowth = runtime.totalMemory() - runtime.freeMemory() - heapBefore;
+        System.out.println(String.format(Locale.US,
+                "sync: %s took %d ms, heap grew by %d KB, location status %d",
+                condition, millis, heapGrowth / 1024, Utility.getLocationStatus(mContext)));
+        return millis;
+    }
+
+    private int storedDays() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocation(LOCATION),
+                new String[]{WeatherContract.WeatherEntry.COLUMN_DATE}, null, null, null);
+        if (cursor == null) {
+            return 0;
+        }
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
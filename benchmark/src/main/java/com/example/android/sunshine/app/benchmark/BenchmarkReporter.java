@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.os.Build;
+import android.os.Bundle;
+import android.test.InstrumentationTestRunner;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Times benchmark operations and appends one JSON object per (benchmark, dataset size) to
+ * a JSON lines file in the app's external files directory, so that runs from different
+ * commits can be compared:
+ *
+ *   adb pull /sdcard/Android/data/com.example.android.sunshine.app/files/benchmarks.jsonl
+ *
+ * Each line holds the commit (from the "commit" instrumentation argument), the device, the
+ * benchmark name, the number of rows and the min / median / mean time per iteration.  Frame
+ * timing runs instead hold the frame count, dropped frames and frame duration percentiles.
+ */
+class BenchmarkReporter {
+    private static final String LOG_TAG = BenchmarkReporter.class.getSimpleName();
+
+    private static final String RESULTS_FILE = "benchmarks.jsonl";
+    private static final String ARG_COMMIT = "commit";
+
+    // The synthetic dataset sizes, from one OWM response up to far more than we ever keep
+    static final int[] SIZES = {14, 100, 1000, 10000, 100000};
+
+    private static final int WARM_UP_ITERATIONS = 2;
+    private static final int MIN_ITERATIONS = 3;
+    private static final int MAX_ITERATIONS = 50;
+    // Stop repeating once this much time has been measured
+    private static final long TARGET_NANOS = 2000L * 1000 * 1000;
+
+    /**
+     * One iteration of a benchmark over a dataset of {@code rows} rows.
+     */
+    static abstract class Operation {
+        /**
+         * Untimed, before each iteration.
+         */
+        void prepare(int rows) throws Exception {
+        }
+
+        abstract void run(int rows) throws Exception;
+    }
+
+    private final Context mContext;
+    private final String mCommit;
+
+    BenchmarkReporter(Instrumentation instrumentation) {
+        mContext = instrumentation.getTargetContext();
+        String commit = null;
+        if (instrumentation instanceof InstrumentationTestRunner) {
+            Bundle arguments = ((InstrumentationTestRunner) instrumentation).getArguments();
+            commit = arguments == null ? null : arguments.getString(ARG_COMMIT);
+        }
+        mCommit = commit == null ? "unknown" : commit;
+    }
+
+    void measure(String benchmark, int rows, Operation operation) throws Exception {
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            operation.prepare(rows);
+            operation.run(rows);
+        }
+
+        long[] times = new long[MAX_ITERATIONS];
+        long total = 0;
+        int iterations = 0;
+        while (iterations < MAX_ITERATIONS
+                && (iterations < MIN_ITERATIONS || total < TARGET_NANOS)) {
+            operation.prepare(rows);
+            long start = System.nanoTime();
+            operation.run(rows);
+            times[iterations] = System.nanoTime() - start;
+            total += times[iterations];
+            iterations++;
+        }
+        long[] measured = Arrays.copyOf(times, iterations);
+        Arrays.sort(measured);
+        report(benchmark, rows, iterations, measured[0], measured[iterations / 2],
+                total / iterations);
+    }
+
+    private void report(String benchmark, int rows, int iterations, long minNanos,
+                        long medianNanos, long meanNanos) throws JSONException {
+        JSONObject result = newResult(benchmark)
+                .put("rows", rows)
+                .put("iterations", iterations)
+                .put("min_ns", minNanos)
+                .put("median_ns", medianNanos)
+                .put("mean_ns", meanNanos)
+                .put("median_ns_per_row", medianNanos / rows);
+        append(result);
+    }
+
+    /**
+     * Reports the frames of a scenario as recorded by the app's FrameTracker.
+     *
+     * @param frames the scenario's histogram from Metrics.toJson, in microseconds
+     */
+    void reportFrames(String benchmark, JSONObject frames, long droppedFrames)
+            throws JSONException {
+        long count = frames.getLong("count");
+        JSONObject result = newResult(benchmark)
+                .put("frames", count)
+                .put("dropped_frames", droppedFrames)
+                .put("dropped_ratio", count == 0 ? 0 : (double) droppedFrames / count)
+                .put("p50_us", frames.getLong("p50_us"))
+                .put("p90_us", frames.getLong("p90_us"))
+                .put("p99_us", frames.getLong("p99_us"))
+                .put("max_us", frames.getLong("max_us"));
+        append(result);
+    }
+
+    private JSONObject newResult(String benchmark) throws JSONException {
+        return new JSONObject()
+                .put("timestamp", System.currentTimeMillis())
+                .put("commit", mCommit)
+                .put("device", Build.MODEL)
+                .put("sdk", Build.VERSION.SDK_INT)
+                .put("benchmark", benchmark);
+    }
+
+    private void append(JSONObject result) {
+        String line = result.toString();
+        Log.i(LOG_TAG, line);
+
+        File dir = mContext.getExternalFilesDir(null);
+        if (dir == null) {
+            Log.w(LOG_TAG, "No external storage, result only logged");
+            return;
+        }
+        FileWriter writer = null;
+        try {
+            writer = new FileWriter(new File(dir, RESULTS_FILE), true);
+            writer.write(line);
+            writer.write('\n');
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Unable to write " + RESULTS_FILE, e);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing stream", e);
+                }
+            }
+        }
+    }
+}
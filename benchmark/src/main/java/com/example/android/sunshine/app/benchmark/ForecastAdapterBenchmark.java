@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.MatrixCursor;
+import android.preference.PreferenceManager;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.test.InstrumentationTestCase;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+import android.widget.AbsListView;
+
+import com.example.android.sunshine.app.ForecastAdapter;
+import com.example.android.sunshine.app.R;
+
+/*
+    ForecastAdapter handing a new cursor over and binding rows, on the main thread as in the
+    app.  The app's local art is used, so that no row waits on the network.
+ */
+public class ForecastAdapterBenchmark extends InstrumentationTestCase {
+    private BenchmarkReporter mReporter;
+    private Context mContext;
+    private String mSavedArtPack;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mReporter = new BenchmarkReporter(getInstrumentation());
+        mContext = new ContextThemeWrapper(getInstrumentation().getTargetContext(),
+                R.style.AppTheme_Main);
+
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String artPackKey = mContext.getString(R.string.pref_art_pack_key);
+        mSavedArtPack = prefs.getString(artPackKey, null);
+        prefs.edit().putString(artPackKey, mContext.getString(R.string.pref_art_pack_sunshine))
+                .commit();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SharedPreferences.Editor editor =
+                PreferenceManager.getDefaultSharedPreferences(mContext).edit();
+        String artPackKey = mContext.getString(R.string.pref_art_pack_key);
+        if (mSavedArtPack == null) {
+            editor.remove(artPackKey);
+        } else {
+            editor.putString(artPackKey, mSavedArtPack);
+        }
+        editor.commit();
+        super.tearDown();
+    }
+
+    public void testSwapCursor() throws Throwable {
+        for (final int rows : BenchmarkReporter.SIZES) {
+            final MatrixCursor cursor = SyntheticForecast.forecastCursor(rows);
+            runOnMainThread(new BenchmarkRunnable() {
+                @Override
+                void run() throws Exception {
+                    mReporter.measure("adapter_swap_cursor", rows,
+                            new BenchmarkReporter.Operation() {
+                                ForecastAdapter adapter;
+
+                                @Override
+                                void prepare(int rows) {
+                                    adapter = newAdapter();
+                                }
+
+                                @Override
+                                void run(int rows) {
+                                    adapter.swapCursor(cursor);
+                                }
+                            });
+                }
+            });
+        }
+    }
+
+    public void testBind() throws Throwable {
+        for (final int rows : BenchmarkReporter.SIZES) {
+            final MatrixCursor cursor = SyntheticForecast.forecastCursor(rows);
+            runOnMainThread(new BenchmarkRunnable() {
+                @Override
+                void run() throws Exception {
+                    final ForecastAdapter adapter = newAdapter();
+                    adapter.swapCursor(cursor);
+                    RecyclerView recyclerView = new RecyclerView(mContext);
+                    recyclerView.setLayoutManager(new LinearLayoutManager(mContext));
+                    recyclerView.setAdapter(adapter);
+                    // One holder per view type, rebound for every row like a scrolling list
+                    final ForecastAdapter.ForecastAdapterViewHolder today =
+                            adapter.onCreateViewHolder(recyclerView, adapter.getItemViewType(0));
+                    final ForecastAdapter.ForecastAdapterViewHolder future =
+                            adapter.onCreateViewHolder(recyclerView, adapter.getItemViewType(1));
+                    mReporter.measure("adapter_bind", rows, new BenchmarkReporter.Operation() {
+                        @Override
+                        void run(int rows) {
+                            adapter.onBindViewHolder(today, 0);
+                            for (int i = 1; i < rows; i++) {
+                                adapter.onBindViewHolder(future, i);
+                            }
+                        }
+                    });
+                }
+            });
+        }
+    }
+
+    private ForecastAdapter newAdapter() {
+        ForecastAdapter adapter = new ForecastAdapter(mContext, null, new View(mContext),
+                AbsListView.CHOICE_MODE_NONE);
+        adapter.setUseTodayLayout(true);
+        return adapter;
+    }
+
+    private static abstract class BenchmarkRunnable {
+        abstract void run() throws Exception;
+    }
+
+    private void runOnMainThread(final BenchmarkRunnable runnable) throws Throwable {
+        final Throwable[] failure = new Throwable[1];
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runnable.run();
+                } catch (Throwable t) {
+                    failure[0] = t;
+                }
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+}
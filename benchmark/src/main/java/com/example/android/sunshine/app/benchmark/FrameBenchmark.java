@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.support.v7.widget.RecyclerView;
+import android.test.ActivityInstrumentationTestCase2;
+import android.view.ViewConfiguration;
+
+import com.example.android.sunshine.app.DetailActivity;
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.perf.FrameTracker;
+import com.example.android.sunshine.app.perf.Metrics;
+
+import org.json.JSONObject;
+
+/*
+    Scripted interaction with the real forecast screen, reporting what FrameTracker saw: a
+    fixed series of flings up and down the list, and opening a day.  The list is filled with
+    synthetic days for a location of its own, so every run draws the same rows whatever the
+    app had stored, and the user's location setting is put back afterwards.
+ */
+public class FrameBenchmark extends ActivityInstrumentationTestCase2<MainActivity> {
+    private static final String LOCATION_SETTING = "99999";
+    private static final int DAYS = 100;
+    private static final int FLINGS = 10;
+    private static final long TIMEOUT_MS = 10000;
+    private static final long POLL_MS = 50;
+
+    private Context mContext;
+    private String mSavedLocation;
+    private long mLocationId;
+
+    public FrameBenchmark() {
+        super(MainActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext = getInstrumentation().getTargetContext();
+
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String locationKey = mContext.getString(R.string.pref_location_key);
+        mSavedLocation = prefs.getString(locationKey, null);
+        prefs.edit().putString(locationKey, LOCATION_SETTING).commit();
+
+        ContentResolver resolver = mContext.getContentResolver();
+        deleteLocation();
+        ContentValues location = SyntheticForecast.locationValues();
+        location.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, LOCATION_SETTING);
+        mLocationId = ContentUris.parseId(
+                resolver.insert(WeatherContract.LocationEntry.CONTENT_URI, location));
+        // The list only shows today onwards
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        resolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI,
+                SyntheticForecast.weatherRows(mLocationId, DAYS, today));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        deleteLocation();
+        SharedPreferences.Editor editor =
+                PreferenceManager.getDefaultSharedPreferences(mContext).edit();
+        String locationKey = mContext.getString(R.string.pref_location_key);
+        if (mSavedLocation == null) {
+            editor.remove(locationKey);
+        } else {
+            editor.putString(locationKey, mSavedLocation);
+        }
+        editor.commit();
+    }
+
+    public void testListFling() throws Exception {
+        final RecyclerView recyclerView = waitForList();
+        int maxVelocity = ViewConfiguration.get(mContext).getScaledMaximumFlingVelocity();
+        final int velocity = maxVelocity / 2;
+        Metrics.reset();
+        for (int i = 0; i < FLINGS; i++) {
+            final int direction = i % 2 == 0 ? 1 : -1;
+            getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    recyclerView.fling(0, direction * velocity);
+                }
+            });
+            waitUntilIdle(recyclerView);
+        }
+        report("frames_list_fling", FrameTracker.SCENARIO_LIST_SCROLL);
+    }
+
+    public void testOpenDay() throws Exception {
+        final RecyclerView recyclerView = waitForList();
+        boolean twoPane = getActivity().findViewById(R.id.weather_detail_container) != null;
+        Instrumentation.ActivityMonitor detailMonitor = getInstrumentation()
+                .addMonitor(DetailActivity.class.getName(), null, false);
+        Metrics.reset();
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                recyclerView.findViewHolderForAdapterPosition(1).itemView.performClick();
+            }
+        });
+        // FrameTracker stops by itself once the transition window is over
+        SystemClock.sleep(FrameTracker.TRANSITION_CAPTURE_MS + 500);
+        Activity detail = detailMonitor.waitForActivityWithTimeout(twoPane ? 0 : TIMEOUT_MS);
+        getInstrumentation().removeMonitor(detailMonitor);
+        if (detail != null) {
+            detail.finish();
+        }
+        if (twoPane) {
+            report("frames_two_pane_select", FrameTracker.SCENARIO_TWO_PANE_SELECT);
+        } else {
+            report("frames_detail_open", FrameTracker.SCENARIO_DETAIL_OPEN);
+        }
+    }
+
+    private RecyclerView waitForList() {
+        RecyclerView recyclerView =
+                (RecyclerView) getActivity().findViewById(R.id.recyclerview_forecast);
+        long deadline = SystemClock.uptimeMillis() + TIMEOUT_MS;
+        while (recyclerView.getAdapter().getItemCount() < DAYS) {
+            assertTrue("The forecast never loaded", SystemClock.uptimeMillis() < deadline);
+            SystemClock.sleep(POLL_MS);
+        }
+        getInstrumentation().waitForIdleSync();
+        return recyclerView;
+    }
+
+    private void waitUntilIdle(RecyclerView recyclerView) {
+        long deadline = SystemClock.uptimeMillis() + TIMEOUT_MS;
+        // Give the fling a frame to start before looking at the state
+        SystemClock.sleep(POLL_MS);
+        while (recyclerView.getScrollState() != RecyclerView.SCROLL_STATE_IDLE) {
+            assertTrue("The list never stopped scrolling", SystemClock.uptimeMillis() < deadline);
+            SystemClock.sleep(POLL_MS);
+        }
+    }
+
+    private void report(String benchmark, String scenario) throws Exception {
+        JSONObject metrics = Metrics.toJson();
+        JSONObject frames = metrics.getJSONObject("histograms")
+                .optJSONObject(FrameTracker.histogramName(scenario));
+        assertNotNull("No frames were recorded for " + scenario, frames);
+        long dropped = metrics.getJSONObject("counters")
+                .optLong(FrameTracker.droppedCounterName(scenario));
+        new BenchmarkReporter(getInstrumentation()).reportFrames(benchmark, frames, dropped);
+    }
+
+    private void deleteLocation() {
+        ContentResolver resolver = mContext.getContentResolver();
+        resolver.delete(WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " IN (SELECT "
+                        + WeatherContract.LocationEntry._ID + " FROM "
+                        + WeatherContract.LocationEntry.TABLE_NAME + " WHERE "
+                        + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?)",
+                new String[]{LOCATION_SETTING});
+        resolver.delete(WeatherContract.LocationEntry.CONTENT_URI,
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{LOCATION_SETTING});
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.test.InstrumentationTestCase;
+
+import com.example.android.sunshine.app.sync.ForecastJsonParser;
+
+/*
+    Parsing of an OpenWeatherMap response into weather rows, as done on every sync.
+ */
+public class ParseBenchmark extends InstrumentationTestCase {
+    // Any fixed day will do, parsing doesn't look at the clock
+    private static final int JULIAN_START_DAY = 2457389;
+
+    public void testParse() throws Exception {
+        BenchmarkReporter reporter = new BenchmarkReporter(getInstrumentation());
+        for (int rows : BenchmarkReporter.SIZES) {
+            final String json = SyntheticForecast.owmJson(rows);
+            reporter.measure("parse", rows, new BenchmarkReporter.Operation() {
+                @Override
+                void run(int rows) throws Exception {
+                    ForecastJsonParser.Forecast forecast =
+                            ForecastJsonParser.parse(json, JULIAN_START_DAY);
+                    assertEquals(rows, forecast.days.length);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.test.InstrumentationTestCase;
+import android.test.RenamingDelegatingContext;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherDbHelper;
+import com.example.android.sunshine.app.data.WeatherProvider;
+
+/*
+    WeatherProvider inserts and the joined weather/location queries the UI makes.  Runs against
+    a provider of our own on a renamed database, so the app's own data is left alone, and calls
+    it directly so that only the provider and SQLite are measured.
+ */
+public class ProviderBenchmark extends InstrumentationTestCase {
+    private static final String DATABASE_PREFIX = "benchmark.";
+    private static final String[] FORECAST_COLUMNS = SyntheticForecast.FORECAST_COLUMNS;
+    // The number of single-day lookups per iteration of the point query benchmark
+    private static final int POINT_QUERIES = 100;
+
+    private BenchmarkReporter mReporter;
+    private RenamingDelegatingContext mContext;
+    private WeatherProvider mProvider;
+    private long mLocationId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mReporter = new BenchmarkReporter(getInstrumentation());
+        mContext = new RenamingDelegatingContext(getInstrumentation().getTargetContext(),
+                DATABASE_PREFIX);
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        mProvider = new WeatherProvider();
+        mProvider.attachInfo(mContext, null);
+        mLocationId = ContentUris.parseId(mProvider.insert(
+                WeatherContract.LocationEntry.CONTENT_URI, SyntheticForecast.locationValues()));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mProvider.shutdown();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    public void testBulkInsert() throws Exception {
+        for (int rows : BenchmarkReporter.SIZES) {
+            final ContentValues[] values = SyntheticForecast.weatherRows(mLocationId, rows);
+            mReporter.measure("provider_bulk_insert", rows, new BenchmarkReporter.Operation() {
+                @Override
+                void prepare(int rows) {
+                    deleteWeather();
+                }
+
+                @Override
+                void run(int rows) {
+                    mProvider.bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI,
+                            values);
+                }
+            });
+        }
+    }
+
+    public void testForecastQuery() throws Exception {
+        for (int rows : BenchmarkReporter.SIZES) {
+            insertWeather(rows);
+            mReporter.measure("provider_forecast_query", rows, new BenchmarkReporter.Operation() {
+                @Override
+                void run(int rows) {
+                    Cursor cursor = mProvider.query(
+                            WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                                    SyntheticForecast.LOCATION_SETTING,
+                                    SyntheticForecast.START_DATE),
+                            FORECAST_COLUMNS, null, null,
+                            WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+                    // Read every column the list reads
+                    int count = 0;
+                    while (cursor.moveToNext()) {
+                        cursor.getLong(1);
+                        cursor.getString(2);
+                        cursor.getDouble(3);
+                        cursor.getDouble(4);
+                        cursor.getInt(6);
+                        count++;
+                    }
+                    cursor.close();
+                    assertEquals(rows, count);
+                }
+            });
+        }
+    }
+
+    public void testDayQuery() throws Exception {
+        for (int rows : BenchmarkReporter.SIZES) {
+            insertWeather(rows);
+            // Reported per lookup, the table size is what varies
+            mReporter.measure("provider_day_query_x" + POINT_QUERIES, rows,
+                    new BenchmarkReporter.Operation() {
+                        @Override
+                        void run(int rows) {
+                            for (int i = 0; i < POINT_QUERIES; i++) {
+                                long date = SyntheticForecast.START_DATE
+                                        + (i * 7919L % rows) * SyntheticForecast.DAY_IN_MILLIS;
+                                Cursor cursor = mProvider.query(
+                                        WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                                                SyntheticForecast.LOCATION_SETTING, date),
+                                        FORECAST_COLUMNS, null, null, null);
+                                assertTrue(cursor.moveToFirst());
+                                cursor.close();
+                            }
+                        }
+                    });
+        }
+    }
+
+    private void insertWeather(int rows) {
+        deleteWeather();
+        mProvider.bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI,
+                SyntheticForecast.weatherRows(mLocationId, rows));
+    }
+
+    private void deleteWeather() {
+        mProvider.delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+    }
+}
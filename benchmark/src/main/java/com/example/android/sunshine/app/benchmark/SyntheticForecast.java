@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.content.ContentValues;
+import android.database.MatrixCursor;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.Locale;
+
+/**
+ * Made-up but realistic forecast data of any length, the same for every run so that results
+ * stay comparable.
+ */
+class SyntheticForecast {
+    static final String LOCATION_SETTING = "94043";
+    static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    // Fixed so that every run formats the same dates
+    static final long START_DATE = WeatherContract.normalizeDate(1451606400000L);  // 2016-01-01
+
+    // A spread of real OWM condition codes, hitting every branch of the lookups
+    static final int[] WEATHER_IDS = {200, 301, 500, 511, 520, 600, 701, 761, 781, 800, 801, 803};
+    private static final String[] DESCRIPTIONS = {"Thunderstorm", "Drizzle", "Rain", "Snow",
+            "Rain", "Snow", "Mist", "Dust", "Tornado", "Clear", "Clouds", "Clouds"};
+
+    // The columns ForecastFragment queries, in its order (see ForecastFragment.COL_*)
+    static final String[] FORECAST_COLUMNS = {
+            WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+    };
+
+    static int weatherId(int day) {
+        return WEATHER_IDS[day % WEATHER_IDS.length];
+    }
+
+    static double high(int day) {
+        return 15 + (day * 7 % 23) / 2.0;
+    }
+
+    static double low(int day) {
+        return high(day) - 4 - day % 9;
+    }
+
+    /**
+     * An OpenWeatherMap daily forecast response with {@code days} days.
+     */
+    static String owmJson(int days) {
+        StringBuilder json = new StringBuilder(days * 220 + 200);
+        json.append("{\"city\":{\"id\":5375480,\"name\":\"Mountain View\",")
+                .append("\"coord\":{\"lon\":-122.083847,\"lat\":37.386051},\"country\":\"US\"},")
+                .append("\"cod\":\"200\",\"message\":0.0123,\"cnt\":").append(days)
+                .append(",\"list\":[");
+        for (int i = 0; i < days; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(String.format(Locale.US, "{\"dt\":%d,\"temp\":{\"day\":%.2f,"
+                            + "\"min\":%.2f,\"max\":%.2f,\"night\":%.2f,\"eve\":%.2f,"
+                            + "\"morn\":%.2f},"
+                            + "\"pressure\":%.2f,\"humidity\":%d,\"weather\":[{\"id\":%d,"
+                            + "\"main\":\"%s\",\"description\":\"%s\",\"icon\":\"01d\"}],"
+                            + "\"speed\":%.2f,\"deg\":%d,\"clouds\":%d}",
+                    (START_DATE + i * DAY_IN_MILLIS) / 1000, high(i) - 1, low(i), high(i),
+                    low(i) + 1, high(i) - 2, low(i) + 2, 1000 + i % 30, 40 + i % 50,
+                    weatherId(i), description(i), description(i).toLowerCase(Locale.US),
+                    1.5 + i % 10, i * 37 % 360, i % 100));
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    /**
+     * Rows for WeatherProvider.bulkInsert, one per day from {@link #START_DATE}.
+     */
+    static ContentValues[] weatherRows(long locationId, int days) {
+        return weatherRows(locationId, days, START_DATE);
+    }
+
+    /**
+     * Rows for WeatherProvider.bulkInsert, one per day from {@code startDate}.
+     */
+    static ContentValues[] weatherRows(long locationId, int days, long startDate) {
+        ContentValues[] rows = new ContentValues[days];
+        for (int i = 0; i < days; i++) {
+            ContentValues values = new ContentValues();
+            values.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+            values.put(WeatherContract.WeatherEntry.COLUMN_DATE, startDate + i * DAY_IN_MILLIS);
+            values.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, i * 37 % 360);
+            values.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, 40 + i % 50);
+            values.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, 1000 + i % 30);
+            values.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high(i));
+            values.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low(i));
+            values.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description(i));
+            values.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, 1.5 + i % 10);
+            values.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId(i));
+            rows[i] = values;
+        }
+        return rows;
+    }
+
+    static ContentValues locationValues() {
+        ContentValues values = new ContentValues();
+        values.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, LOCATION_SETTING);
+        values.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, "Mountain View");
+        values.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, 37.386051);
+        values.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, -122.083847);
+        return values;
+    }
+
+    /**
+     * What the forecast list's loader would return for {@code days} days.
+     */
+    static MatrixCursor forecastCursor(int days) {
+        MatrixCursor cursor = new MatrixCursor(FORECAST_COLUMNS, days);
+        for (int i = 0; i < days; i++) {
+            cursor.addRow(new Object[]{i + 1, START_DATE + i * DAY_IN_MILLIS, description(i),
+                    high(i), low(i), LOCATION_SETTING, weatherId(i), 37.386051, -122.083847});
+        }
+        return cursor;
+    }
+
+    private static String description(int day) {
+        return DESCRIPTIONS[day % DESCRIPTIONS.length];
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.content.Context;
+import android.test.InstrumentationTestCase;
+
+import com.example.android.sunshine.app.Utility;
+
+/*
+    The Utility formatting and condition lookups done for every row the UI shows.
+ */
+public class UtilityBenchmark extends InstrumentationTestCase {
+    private BenchmarkReporter mReporter;
+    private Context mContext;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mReporter = new BenchmarkReporter(getInstrumentation());
+        mContext = getInstrumentation().getTargetContext();
+    }
+
+    public void testFormatting() throws Exception {
+        for (int rows : BenchmarkReporter.SIZES) {
+            mReporter.measure("utility_format", rows, new BenchmarkReporter.Operation() {
+                @Override
+                void run(int rows) {
+                    for (int i = 0; i < rows; i++) {
+                        long date = SyntheticForecast.START_DATE
+                                + i * SyntheticForecast.DAY_IN_MILLIS;
+                        Utility.getFriendlyDayString(mContext, date, i == 0);
+                        Utility.formatTemperature(mContext, SyntheticForecast.high(i));
+                        Utility.formatTemperature(mContext, SyntheticForecast.low(i));
+                    }
+                }
+            });
+        }
+    }
+
+    public void testConditionLookup() throws Exception {
+        for (int rows : BenchmarkReporter.SIZES) {
+            mReporter.measure("utility_condition_lookup", rows,
+                    new BenchmarkReporter.Operation() {
+                        @Override
+                        void run(int rows) {
+                            for (int i = 0; i < rows; i++) {
+                                int weatherId = SyntheticForecast.weatherId(i);
+                                Utility.getIconResourceForWeatherCondition(weatherId);
+                                Utility.getArtResourceForWeatherCondition(weatherId);
+                                Utility.getStringForWeatherCondition(mContext, weatherId);
+                            }
+                        }
+                    });
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.Calendar;
+import java.util.Locale;
+
+/*
+    Draws the watch face into an offscreen bitmap the way the engine does once a second, and
+    reports the time per frame and the number of objects allocated while drawing.  Run it with
+
+      ./gradlew :wearable_app:connectedAndroidTest
+
+    on a watch (or emulator) and look for the WatchFaceRendererBenchmark lines in logcat.
+ */
+public class WatchFaceRendererBenchmark extends AndroidTestCase {
+    private static final String LOG_TAG = WatchFaceRendererBenchmark.class.getSimpleName();
+
+    private static final int SIZE = 320;
+    private static final int WARM_UP_FRAMES = 100;
+    private static final int FRAMES = 1000;
+
+    private WatchFaceRenderer mRenderer;
+    private Canvas mCanvas;
+    private Rect mBounds;
+    private Calendar mCalendar;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mRenderer = new WatchFaceRenderer(getContext().getResources());
+        mRenderer.setIcon(BitmapFactory.decodeResource(getContext().getResources(),
+                R.drawable.art_clear));
+        mRenderer.setTemperatures(21.4, -3.6);
+        mRenderer.setRound(true);
+        mCanvas = new Canvas(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+        mBounds = new Rect(0, 0, SIZE, SIZE);
+        mCalendar = Calendar.getInstance();
+    }
+
+    public void testInteractiveFrame() {
+        mRenderer.setAmbient(false);
+        runFrames("interactive");
+    }
+
+    public void testAmbientFrame() {
+        mRenderer.setAmbient(true);
+        runFrames("ambient");
+    }
+
+    public void testTemperatureFormat() {
+        char[] text = new char[7];
+        assertEquals("21°", new String(text, 0,
+                WatchFaceRenderer.formatTemperature(21.4, text)));
+        assertEquals("-4°", new String(text, 0,
+                WatchFaceRenderer.formatTemperature(-3.6, text)));
+        assertEquals("0°", new String(text, 0,
+                WatchFaceRenderer.formatTemperature(0, text)));
+    }
+
+    @SuppressWarnings("deprecation")
+    private void runFrames(String mode) {
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < WARM_UP_FRAMES; i++) {
+            drawFrame(start, i);
+        }
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < FRAMES; i++) {
+            drawFrame(start, i);
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        Debug.stopAllocCounting();
+        int allocations = Debug.getThreadAllocCount();
+
+        Log.i(LOG_TAG, String.format(Locale.US, "%s: %d frames, %.1f us/frame, %d allocations",
+                mode, FRAMES, elapsedNanos / 1000.0 / FRAMES, allocations));
+        assertEquals("Drawing a " + mode + " frame allocated", 0, allocations);
+    }
+
+    private void drawFrame(long start, int frame) {
+        // One second per frame, so that every digit gets exercised
+        mCalendar.setTimeInMillis(start + frame * 1000L);
+        mRenderer.draw(mCanvas, mBounds, mCalendar);
+    }
+}
@@ -20,14 +20,10 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.content.res.Resources;
+import android.content.SharedPreferences;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.Typeface;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
@@ -46,17 +42,15 @@ import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
 import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataItemBuffer;
 import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.DataMapItem;
-import com.google.android.gms.wearable.Node;
-import com.google.android.gms.wearable.NodeApi;
+import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
 import java.lang.ref.WeakReference;
 import java.util.Calendar;
-import java.util.List;
-import java.util.Locale;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
@@ -66,8 +60,6 @@ import java.util.concurrent.TimeUnit;
  */
 public class MySunshineWatchFace extends CanvasWatchFaceService {
     private static final String TAG = MySunshineWatchFace.class.getSimpleName();
-    private static final Typeface NORMAL_TYPEFACE =
-            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
 
     /**
      * Update rate in milliseconds for interactive mode. We update once a second since seconds are
@@ -85,6 +77,10 @@ public class MySunshineWatchFace extends CanvasWatchFaceService {
     private static final String LOW_KEY = "low_temp";
     private static final String HIGH_KEY = "high_temp";
 
+    // The last weather we got from the phone, shown until the phone sends something newer
+    private static final String LAST_WEATHER_PREFS = "last_weather";
+    private static final String FORECAST_PREFIX = "forecast_";
+
     @Override
     public Engine onCreateEngine() {
         return new Engine();
@@ -111,15 +107,13 @@ public class MySunshineWatchFace extends CanvasWatchFaceService {
     }
 
     private class Engine extends CanvasWatchFaceService.Engine implements DataApi.DataListener,
-            GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener{
+            GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener,
+            WeatherIconCache.Listener {
         final Handler mUpdateTimeHandler = new EngineHandler(this);
         boolean mRegisteredTimeZoneReceiver = false;
-        Paint mBackgroundPaint;
-        Bitmap mIconBitmap;
-        Paint mTextTimePaint;
-        Paint mTextTempPaint;
+        WatchFaceRenderer mRenderer;
+        WeatherIconCache mIconCache;
         boolean mAmbient;
-        boolean mIsRound;
         Calendar mCalendar;
 
         GoogleApiClient mGoogleApiClient = new GoogleApiClient.Builder(MySunshineWatchFace.this)
@@ -132,23 +126,18 @@ public class MySunshineWatchFace extends CanvasWatchFaceService {
             @Override
             public void onReceive(Context context, Intent intent) {
                 mCalendar.setTimeZone(TimeZone.getDefault());
+                mRenderer.set24HourFormat(DateFormat.is24HourFormat(MySunshineWatchFace.this));
                 invalidate();
             }
         };
 
-        float mXOffsetTime;
-        float mYOffsetTime;
-        float mYOffsetMinute;
-        float mXOffsetIcon;
-        float mYOffsetIcon;
-        float mXOffsetLowTemp;
-        float mYOffsetLowTemp;
-        float mXOffsetHighTemp;
-        float mYOffsetHighTemp;
-
         int mWeatherId = 800;
         double mLowTemp = 0;
         double mHighTemp = 0;
+        // The forecast window from the phone, null until we get one
+        WearForecast mForecast;
+        // The Julian day whose forecast is being shown
+        int mShownJulianDay;
 
         /**
          * Whether the display supports fewer bits for each color in ambient mode. When true, we
@@ -166,41 +155,51 @@ public class MySunshineWatchFace extends CanvasWatchFaceService {
                     .setShowSystemUiTime(false)
                     .setAcceptsTapEvents(true)
                     .build());
-            Resources resources = MySunshineWatchFace.this.getResources();
-            mYOffsetTime = resources.getDimension(R.dimen.digital_y_offset_time);
-            mYOffsetMinute = resources.getDimension(R.dimen.digital_y_offset_minute_ambient);
-            mYOffsetIcon = resources.getDimension(R.dimen.digital_y_offset_icon);
-            mYOffsetLowTemp = resources.getDimension(R.dimen.digital_y_offset_low_temp);
-            mYOffsetHighTemp = resources.getDimension(R.dimen.digital_y_offset_high_temp);
-
-            mBackgroundPaint = new Paint();
-            mBackgroundPaint.setColor(resources.getColor(R.color.sunshine));
-
-            mIconBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.art_clear);
+            mRenderer = new WatchFaceRenderer(MySunshineWatchFace.this.getResources());
+            mIconCache = new WeatherIconCache(getResources(), this);
+            mRenderer.set24HourFormat(DateFormat.is24HourFormat(MySunshineWatchFace.this));
 
-            mTextTimePaint = new Paint();
-            mTextTimePaint = createTextPaint(resources.getColor(R.color.primary_text));
+            mCalendar = Calendar.getInstance();
+            showLastWeather();
+        }
 
-            mTextTempPaint = new Paint();
-            mTextTempPaint = createTextPaint(resources.getColor(R.color.secondary_text));
+        /**
+         * Shows what we were showing before the face was last destroyed, without waiting for
+         * the phone, which may well be out of range.
+         */
+        private void showLastWeather() {
+            SharedPreferences prefs = getSharedPreferences(LAST_WEATHER_PREFS, MODE_PRIVATE);
+            if (!prefs.contains(ID_KEY)) {
+                return;
+            }
+            showWeather(prefs.getInt(ID_KEY, mWeatherId),
+                    Double.longBitsToDouble(prefs.getLong(HIGH_KEY, 0)),
+                    Double.longBitsToDouble(prefs.getLong(LOW_KEY, 0)));
+            mForecast = WearForecast.load(prefs, FORECAST_PREFIX);
+            // Move on to today if the stored window covers it
+            mCalendar.setTimeInMillis(System.currentTimeMillis());
+            updateShownDay();
+        }
 
-            mCalendar = Calendar.getInstance();
+        private void saveLastWeather() {
+            SharedPreferences.Editor editor =
+                    getSharedPreferences(LAST_WEATHER_PREFS, MODE_PRIVATE).edit();
+            editor.putInt(ID_KEY, mWeatherId);
+            editor.putLong(HIGH_KEY, Double.doubleToRawLongBits(mHighTemp));
+            editor.putLong(LOW_KEY, Double.doubleToRawLongBits(mLowTemp));
+            if (mForecast != null) {
+                mForecast.save(editor, FORECAST_PREFIX);
+            }
+            editor.apply();
         }
 
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mIconCache.release();
             super.onDestroy();
         }
 
-        private Paint createTextPaint(int textColor) {
-            Paint paint = new Paint();
-            paint.setColor(textColor);
-            paint.setTypeface(NORMAL_TYPEFACE);
-            paint.setAntiAlias(true);
-            return paint;
-        }
-
         @Override
         public void onVisibilityChanged(boolean visible) {
             if (Log.isLoggable(TAG, Log.DEBUG)) {
@@ -212,10 +211,13 @@ public class MySunshineWatchFace extends CanvasWatchFaceService {
                 mGoogleApiClient.connect();
                 registerReceiver();
 
-                // Update time zone, in case they changed while we weren't visible.
+                // Update time zone and 12/24 hour format, in case they changed while we
+                // weren't visible.
                 mCalendar.setTimeZone(TimeZone.getDefault());
+                mRenderer.set24HourFormat(DateFormat.is24HourFormat(MySunshineWatchFace.this));
             } else {
                 unregisterReceiver();
+                mRenderer.releaseLayer();
 
                 if (mGoogleApiClient != null && mGoogleApiClient.isConnected()) {
                     Wearable.DataApi.removeListener(mGoogleApiClient, this);
@@ -235,6 +237,7 @@ public class MySunshineWatchFace extends CanvasWatchFaceService {
             mRegisteredTimeZoneReceiver = true;
             IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
             filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+            filter.addAction(Intent.ACTION_TIME_CHANGED);
             MySunshineWatchFace.this.registerReceiver(mTimeZoneReceiver, filter);
         }
 
@@ -250,26 +253,21 @@ public class MySunshineWatchFace extends CanvasWatchFaceService {
         public void onApplyWindowInsets(WindowInsets insets) {
             super.onApplyWindowInsets(insets);
 
-            // Load resources that have alternate values for round watches.
-            Resources resources = MySunshineWatchFace.this.getResources();
-            mIsRound = insets.isRound();
-            mXOffsetTime = resources.getDimension(mIsRound
-                    ? R.dimen.digital_x_offset_round_time : R.dimen.digital_x_offset_time);
-            mXOffsetIcon = resources.getDimension(mIsRound
-                    ? R.dimen.digital_x_offset_round_icon : R.dimen.digital_x_offset_icon);
-            mXOffsetLowTemp = resources.getDimension(mIsRound
-                    ? R.dimen.digital_x_offset_round_low_temp : R.dimen.digital_x_offset_low_temp);
-            mXOffsetHighTemp = resources.getDimension(mIsRound
-                    ? R.dimen.digital_x_offset_round_high_temp : R.dimen.digital_x_offset_high_temp);
-
-            mTextTimePaint.setTextSize(resources.getDimension(R.dimen.time_text_size));
-            mTextTempPaint.setTextSize(resources.getDimension(R.dimen.temp_text_size));
+            mRenderer.setRound(insets.isRound());
+            mIconCache.load(insets.isRound());
+        }
+
+        @Override  // WeatherIconCache.Listener
+        public void onIconsLoaded() {
+            mRenderer.setIcon(mIconCache.get(mWeatherId));
+            invalidate();
         }
 
         @Override
         public void onPropertiesChanged(Bundle properties) {
             super.onPropertiesChanged(properties);
             mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+            mRenderer.setLowBitAmbient(mLowBitAmbient);
         }
 
         @Override
@@ -282,36 +280,8 @@ public class MySunshineWatchFace extends CanvasWatchFaceService {
         public void onAmbientModeChanged(boolean inAmbientMode) {
             super.onAmbientModeChanged(inAmbientMode);
             if (mAmbient != inAmbientMode) {
-                Resources resources = MySunshineWatchFace.this.getResources();
                 mAmbient = inAmbientMode;
-                if (mLowBitAmbient) {
-                    mTextTimePaint.setAntiAlias(!inAmbientMode);
-                    mTextTempPaint.setAntiAlias(!inAmbientMode);
-                }
-
-                float textSizeTime = resources.getDimension(mAmbient
-                        ? R.dimen.time_text_size_ambient : R.dimen.time_text_size);
-                float textSizeTemp = resources.getDimension(mAmbient
-                        ? R.dimen.time_text_size : R.dimen.temp_text_size);
-                mTextTimePaint.setTextSize(textSizeTime);
-                mTextTempPaint.setTextSize(textSizeTemp);
-                mTextTempPaint.setColor(resources.getColor(mAmbient ? R.color.primary_text:R.color.secondary_text));
-
-                if (mAmbient) {
-                    mXOffsetTime = resources.getDimension(mIsRound
-                            ? R.dimen.digital_x_offset_round_time_ambient : R.dimen.digital_x_offset_time);
-                    mYOffsetTime = resources.getDimension(R.dimen.digital_y_offset_time_ambient);
-                    mYOffsetHighTemp = resources.getDimension(R.dimen.digital_y_offset_high_temp_ambient);
-                    mXOffsetHighTemp = resources.getDimension(mIsRound ? R.dimen.digital_x_offset_round_high_temp_ambient:
-                                                                         R.dimen.digital_x_offset_high_temp_ambient);
-                }else {
-                    mXOffsetTime = resources.getDimension(mIsRound
-                            ? R.dimen.digital_x_offset_round_time : R.dimen.digital_x_offset_time);
-                    mYOffsetTime = resources.getDimension(R.dimen.digital_y_offset_time);
-                    mYOffsetHighTemp = resources.getDimension(R.dimen.digital_y_offset_high_temp);
-                    mXOffsetHighTemp = resources.getDimension(mIsRound ? R.dimen.digital_x_offset_round_high_temp:
-                                                                         R.dimen.digital_x_offset_high_temp);
-                }
+                mRenderer.setAmbient(inAmbientMode);
                 invalidate();
             }
 
@@ -322,39 +292,9 @@ public class MySunshineWatchFace extends CanvasWatchFaceService {
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            // Draw H:MM in ambient mode or H:MM:SS in interactive mode.
-            long now = System.currentTimeMillis();
-            mCalendar.setTimeInMillis(now);
-            boolean is24Hour = DateFormat.is24HourFormat(MySunshineWatchFace.this);
-            int hour = is24Hour ? mCalendar.get(Calendar.HOUR_OF_DAY): mCalendar.get(Calendar.HOUR);
-            if (!is24Hour && hour == 0) {
-                hour = 12;
-            }
-
-            // Draw the background.
-            if (isInAmbientMode()) {
-                canvas.drawColor(Color.BLACK);
-            } else {
-                mBackgroundPaint.setColor(getResources().getColor(Utility.getColorBackgroundByTime(mCalendar.get(Calendar.HOUR_OF_DAY))));
-                canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
-                canvas.drawBitmap(mIconBitmap, mXOffsetIcon, mYOffsetIcon, mBackgroundPaint);
-            }
-            Locale locale = Locale.getDefault();
-            String highTempText = String.format(locale, "%.0f", mHighTemp) + "\u00B0";
-
-            if (!mAmbient) {
-                String text = String.format(locale, "%02d:%02d:%02d", hour, mCalendar.get(Calendar.MINUTE), mCalendar.get(Calendar.SECOND));
-                canvas.drawText(text, mXOffsetTime, mYOffsetTime, mTextTimePaint);
-                String lowTempText = String.format(locale, "%.0f", mLowTemp) + "\u00B0";
-                canvas.drawText(lowTempText, mXOffsetLowTemp, mYOffsetLowTemp, mTextTempPaint);
-                canvas.drawText(highTempText, mXOffsetHighTemp, mYOffsetHighTemp, mTextTimePaint);
-            } else {
-                String textHour = String.format(locale, "%02d", hour);
-                canvas.drawText(textHour, mXOffsetTime, mYOffsetTime, mTextTimePaint);
-                String textMinute = String.format(locale, "%02d", mCalendar.get(Calendar.MINUTE));
-                canvas.drawText(textMinute, mXOffsetTime, mYOffsetMinute, mTextTimePaint);
-                canvas.drawText(highTempText, mXOffsetHighTemp, mYOffsetHighTemp, mTextTempPaint);
-            }
+            mCalendar.setTimeInMillis(System.currentTimeMillis());
+            updateShownDay();
+            mRenderer.draw(canvas, bounds, mCalendar);
         }
 
         /**
@@ -424,43 +364,106 @@ public class MySunshineWatchFace extends CanvasWatchFaceService {
         }
 
         private void updateUiWithDataMap(DataMap dataMap) {
-            mWeatherId = dataMap.getInt(ID_KEY);
-            int weatherResource = Utility.getArtResourceForWeatherCondition(mWeatherId);
-            if (weatherResource != -1) {
-                mIconBitmap = BitmapFactory.decodeResource(getResources(), weatherResource);
+            if (WearForecast.isApplied(dataMap, mForecast)) {
+                // The window we restored or already applied
+                return;
             }
-            mLowTemp = dataMap.getDouble(LOW_KEY);
-            mHighTemp = dataMap.getDouble(HIGH_KEY);
+            WearForecast forecast = WearForecast.fromDataMap(dataMap, mForecast);
+            if (forecast != null) {
+                mForecast = forecast;
+                sendAck(forecast.version);
+                // Pick today's entry out of the new window
+                mShownJulianDay = 0;
+                updateShownDay();
+            } else {
+                if (dataMap.containsKey(WearForecast.VERSION_KEY)) {
+                    // A delta against a version we don't have, ask for the whole window
+                    sendAck(WearForecast.VERSION_NEEDS_FULL);
+                }
+                if (dataMap.containsKey(ID_KEY)) {
+                    showWeather(dataMap.getInt(ID_KEY), dataMap.getDouble(HIGH_KEY),
+                            dataMap.getDouble(LOW_KEY));
+                }
+            }
+            saveLastWeather();
             invalidate();
         }
 
+        /**
+         * Moves on to the forecast of the current day once the date changes, using the window
+         * we already have rather than waiting for the phone.
+         */
+        private void updateShownDay() {
+            if (mForecast == null) {
+                return;
+            }
+            int today = WearForecast.getJulianDay(mCalendar.getTimeInMillis(),
+                    mCalendar.getTimeZone());
+            if (today == mShownJulianDay) {
+                return;
+            }
+            int index = mForecast.indexOf(today);
+            if (index < 0) {
+                // Past the end of the window, keep the last day we showed
+                return;
+            }
+            mShownJulianDay = today;
+            showWeather(mForecast.weatherIds[index], mForecast.highs[index],
+                    mForecast.lows[index]);
+        }
+
+        private void showWeather(int weatherId, double high, double low) {
+            if (weatherId != mWeatherId) {
+                Bitmap icon = mIconCache.get(weatherId);
+                if (icon != null) {
+                    mRenderer.setIcon(icon);
+                }
+            }
+            mWeatherId = weatherId;
+            mHighTemp = high;
+            mLowTemp = low;
+            mRenderer.setTemperatures(high, low);
+        }
+
+        private void sendAck(int version) {
+            if (!mGoogleApiClient.isConnected()) {
+                return;
+            }
+            PutDataMapRequest ack = PutDataMapRequest.create(WearForecast.ACK_PATH);
+            ack.getDataMap().putInt(WearForecast.VERSION_KEY, version);
+            ack.getDataMap().putLong(WearForecast.ACK_TIME_KEY, System.currentTimeMillis());
+            Wearable.DataApi.putDataItem(mGoogleApiClient, ack.asPutDataRequest());
+        }
+
+        /**
+         * Checks whether the phone has sent weather while we weren't listening.  The face is
+         * already showing the last weather we had, so this only ever replaces it with something
+         * newer.
+         */
         private void fetchDataMap() {
             Log.d(TAG, "fetchDataMap");
-            Wearable.NodeApi.getConnectedNodes(mGoogleApiClient).setResultCallback(
-                    new ResultCallback<NodeApi.GetConnectedNodesResult>() {
+            // No authority: whichever node the item came from
+            Uri uri = new Uri.Builder().scheme(PutDataRequest.WEAR_URI_SCHEME)
+                    .path(WEATHER_PATH)
+                    .build();
+            Wearable.DataApi.getDataItems(mGoogleApiClient, uri).setResultCallback(
+                    new ResultCallback<DataItemBuffer>() {
                         @Override
-                        public void onResult(NodeApi.GetConnectedNodesResult getNodesResult) {
-                            List<Node> nodes = getNodesResult.getNodes();
-                            if (nodes.size() > 0) {
-                                String remoteNode = nodes.get(0).getId();
-                                Uri uri = new Uri.Builder().scheme(PutDataRequest.WEAR_URI_SCHEME).path(WEATHER_PATH)
-                                        .authority(remoteNode)
-                                        .build();
-                                Wearable.DataApi.getDataItem(mGoogleApiClient, uri).setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
-                                    @Override
-                                    public void onResult(DataApi.DataItemResult dataItemResult) {
-                                        if (dataItemResult.getStatus().isSuccess() && dataItemResult.getDataItem() != null) {
-                                                Log.d(TAG, "Event received on fetch: " + dataItemResult.getDataItem().getUri());
-                                                DataItem configDataItem = dataItemResult.getDataItem();
-                                                DataMapItem dataMapItem = DataMapItem.fromDataItem(configDataItem);
-                                                updateUiWithDataMap(dataMapItem.getDataMap());
-                                        }
-                                    }
-                                });
+                        public void onResult(DataItemBuffer dataItems) {
+                            try {
+                                if (!dataItems.getStatus().isSuccess()) {
+                                    return;
+                                }
+                                for (DataItem dataItem : dataItems) {
+                                    Log.d(TAG, "Event received on fetch: " + dataItem.getUri());
+                                    updateUiWithDataMap(
+                                            DataMapItem.fromDataItem(dataItem).getDataMap());
+                                }
+                            } finally {
+                                dataItems.release();
                             }
                         }
-                    }
-             );
+                    });
         }
     }
 }
@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+
+import java.util.Calendar;
+
+/**
+ * Draws the Sunshine watch face.  Everything that can be worked out ahead of time (colors,
+ * offsets, text sizes, the temperature text) is, so that {@link #draw(Canvas, Rect, Calendar)}
+ * doesn't allocate anything; it runs every second while the watch is interactive.
+ *
+ * Only the seconds change from one second to the next, so everything else (background, icon,
+ * temperatures and HH:MM) is composed into an offscreen layer that is rebuilt when the minute,
+ * the weather or the mode changes.  A regular frame is then just a blit of that layer plus the
+ * ":SS" glyphs.
+ *
+ * Kept apart from the engine so that it can be driven by a benchmark.
+ */
+class WatchFaceRenderer {
+    private static final Typeface NORMAL_TYPEFACE =
+            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
+
+    private static final char DEGREE = '\u00B0';
+
+    private final Resources mResources;
+
+    private final Paint mBackgroundPaint;
+    private final Paint mTextTimePaint;
+    private final Paint mTextTempPaint;
+    // Background color of each hour of the day
+    private final int[] mBackgroundColors = new int[24];
+
+    // "HH:MM:SS", or just "HH" and "MM" in ambient mode
+    private final char[] mTimeText = new char[8];
+    // Room for a sign, five digits and the degree sign
+    private final char[] mHighTempText = new char[7];
+    private int mHighTempLength;
+    private final char[] mLowTempText = new char[7];
+    private int mLowTempLength;
+
+    // The static part of the face, and what it was drawn for
+    private Bitmap mLayerBitmap;
+    private Canvas mLayerCanvas;
+    private boolean mLayerDirty = true;
+    private int mLayerMinuteOfDay = -1;
+    // Where ":SS" goes, right after HH:MM
+    private float mXOffsetSeconds;
+
+    private Bitmap mIconBitmap;
+    private boolean mAmbient;
+    private boolean mLowBitAmbient;
+    private boolean mIsRound;
+    private boolean mIs24Hour;
+
+    private float mXOffsetTime;
+    private float mYOffsetTime;
+    private final float mYOffsetMinute;
+    private float mXOffsetIcon;
+    private final float mYOffsetIcon;
+    private float mXOffsetLowTemp;
+    private final float mYOffsetLowTemp;
+    private float mXOffsetHighTemp;
+    private float mYOffsetHighTemp;
+
+    WatchFaceRenderer(Resources resources) {
+        mResources = resources;
+        mYOffsetTime = resources.getDimension(R.dimen.digital_y_offset_time);
+        mYOffsetMinute = resources.getDimension(R.dimen.digital_y_offset_minute_ambient);
+        mYOffsetIcon = resources.getDimension(R.dimen.digital_y_offset_icon);
+        mYOffsetLowTemp = resources.getDimension(R.dimen.digital_y_offset_low_temp);
+        mYOffsetHighTemp = resources.getDimension(R.dimen.digital_y_offset_high_temp);
+
+        mBackgroundPaint = new Paint();
+        mBackgroundPaint.setColor(resources.getColor(R.color.sunshine));
+        for (int hour = 0; hour < mBackgroundColors.length; hour++) {
+            mBackgroundColors[hour] = resources.getColor(Utility.getColorBackgroundByTime(hour));
+        }
+
+        mTextTimePaint = createTextPaint(resources.getColor(R.color.primary_text));
+        mTextTempPaint = createTextPaint(resources.getColor(R.color.secondary_text));
+
+        mTimeText[2] = ':';
+        mTimeText[5] = ':';
+        setTemperatures(0, 0);
+        setRound(false);
+    }
+
+    private static Paint createTextPaint(int textColor) {
+        Paint paint = new Paint();
+        paint.setColor(textColor);
+        paint.setTypeface(NORMAL_TYPEFACE);
+        paint.setAntiAlias(true);
+        return paint;
+    }
+
+    void setIcon(Bitmap iconBitmap) {
+        mIconBitmap = iconBitmap;
+        mLayerDirty = true;
+    }
+
+    void setTemperatures(double high, double low) {
+        mHighTempLength = formatTemperature(high, mHighTempText);
+        mLowTempLength = formatTemperature(low, mLowTempText);
+        mLayerDirty = true;
+    }
+
+    void set24HourFormat(boolean is24Hour) {
+        mIs24Hour = is24Hour;
+        mLayerDirty = true;
+    }
+
+    void setLowBitAmbient(boolean lowBitAmbient) {
+        mLowBitAmbient = lowBitAmbient;
+        mLayerDirty = true;
+    }
+
+    /**
+     * Drops the offscreen layer, e.g. while the face isn't visible.
+     */
+    void releaseLayer() {
+        if (mLayerBitmap != null) {
+            mLayerBitmap.recycle();
+            mLayerBitmap = null;
+            mLayerCanvas = null;
+        }
+        mLayerDirty = true;
+    }
+
+    void setRound(boolean isRound) {
+        // Load resources that have alternate values for round watches.
+        mIsRound = isRound;
+        mXOffsetIcon = mResources.getDimension(mIsRound
+                ? R.dimen.digital_x_offset_round_icon : R.dimen.digital_x_offset_icon);
+        mXOffsetLowTemp = mResources.getDimension(mIsRound
+                ? R.dimen.digital_x_offset_round_low_temp : R.dimen.digital_x_offset_low_temp);
+        updateModeDimensions();
+    }
+
+    void setAmbient(boolean inAmbientMode) {
+        mAmbient = inAmbientMode;
+        if (mLowBitAmbient) {
+            mTextTimePaint.setAntiAlias(!inAmbientMode);
+            mTextTempPaint.setAntiAlias(!inAmbientMode);
+        }
+        mTextTempPaint.setColor(mResources.getColor(mAmbient
+                ? R.color.primary_text : R.color.secondary_text));
+        updateModeDimensions();
+    }
+
+    private void updateModeDimensions() {
+        mLayerDirty = true;
+        mTextTimePaint.setTextSize(mResources.getDimension(mAmbient
+                ? R.dimen.time_text_size_ambient : R.dimen.time_text_size));
+        mTextTempPaint.setTextSize(mResources.getDimension(mAmbient
+                ? R.dimen.time_text_size : R.dimen.temp_text_size));
+        if (mAmbient) {
+            mXOffsetTime = mResources.getDimension(mIsRound
+                    ? R.dimen.digital_x_offset_round_time_ambient : R.dimen.digital_x_offset_time);
+            mYOffsetTime = mResources.getDimension(R.dimen.digital_y_offset_time_ambient);
+            mYOffsetHighTemp = mResources.getDimension(R.dimen.digital_y_offset_high_temp_ambient);
+            mXOffsetHighTemp = mResources.getDimension(mIsRound
+                    ? R.dimen.digital_x_offset_round_high_temp_ambient
+                    : R.dimen.digital_x_offset_high_temp_ambient);
+        } else {
+            mXOffsetTime = mResources.getDimension(mIsRound
+                    ? R.dimen.digital_x_offset_round_time : R.dimen.digital_x_offset_time);
+            mYOffsetTime = mResources.getDimension(R.dimen.digital_y_offset_time);
+            mYOffsetHighTemp = mResources.getDimension(R.dimen.digital_y_offset_high_temp);
+            mXOffsetHighTemp = mResources.getDimension(mIsRound
+                    ? R.dimen.digital_x_offset_round_high_temp : R.dimen.digital_x_offset_high_temp);
+        }
+    }
+
+    /**
+     * Draws H:MM in ambient mode or H:MM:SS in interactive mode.
+     */
+    void draw(Canvas canvas, Rect bounds, Calendar calendar) {
+        int hourOfDay = calendar.get(Calendar.HOUR_OF_DAY);
+        int minuteOfDay = hourOfDay * 60 + calendar.get(Calendar.MINUTE);
+        if (mLayerBitmap == null || mLayerBitmap.getWidth() != bounds.width()
+                || mLayerBitmap.getHeight() != bounds.height()) {
+            releaseLayer();
+            mLayerBitmap = Bitmap.createBitmap(bounds.width(), bounds.height(),
+                    Bitmap.Config.ARGB_8888);
+            mLayerCanvas = new Canvas(mLayerBitmap);
+        }
+        if (mLayerDirty || minuteOfDay != mLayerMinuteOfDay) {
+            drawLayer(mLayerCanvas, bounds, calendar);
+            mLayerDirty = false;
+            mLayerMinuteOfDay = minuteOfDay;
+        }
+
+        canvas.drawBitmap(mLayerBitmap, bounds.left, bounds.top, null);
+        if (!mAmbient) {
+            putTwoDigits(mTimeText, 6, calendar.get(Calendar.SECOND));
+            canvas.drawText(mTimeText, 5, 3, mXOffsetSeconds, mYOffsetTime, mTextTimePaint);
+        }
+    }
+
+    /**
+     * Draws everything but the seconds.
+     */
+    private void drawLayer(Canvas canvas, Rect bounds, Calendar calendar) {
+        int hourOfDay = calendar.get(Calendar.HOUR_OF_DAY);
+        int hour = mIs24Hour ? hourOfDay : calendar.get(Calendar.HOUR);
+        if (!mIs24Hour && hour == 0) {
+            hour = 12;
+        }
+
+        // Draw the background.
+        if (mAmbient) {
+            canvas.drawColor(Color.BLACK);
+        } else {
+            mBackgroundPaint.setColor(mBackgroundColors[hourOfDay]);
+            canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
+            if (mIconBitmap != null) {
+                canvas.drawBitmap(mIconBitmap, mXOffsetIcon, mYOffsetIcon, mBackgroundPaint);
+            }
+        }
+
+        putTwoDigits(mTimeText, 0, hour);
+        putTwoDigits(mTimeText, 3, calendar.get(Calendar.MINUTE));
+        if (!mAmbient) {
+            canvas.drawText(mTimeText, 0, 5, mXOffsetTime, mYOffsetTime, mTextTimePaint);
+            mXOffsetSeconds = mXOffsetTime + mTextTimePaint.measureText(mTimeText, 0, 5);
+            canvas.drawText(mLowTempText, 0, mLowTempLength, mXOffsetLowTemp, mYOffsetLowTemp,
+                    mTextTempPaint);
+            canvas.drawText(mHighTempText, 0, mHighTempLength, mXOffsetHighTemp, mYOffsetHighTemp,
+                    mTextTimePaint);
+        } else {
+            canvas.drawText(mTimeText, 0, 2, mXOffsetTime, mYOffsetTime, mTextTimePaint);
+            canvas.drawText(mTimeText, 3, 2, mXOffsetTime, mYOffsetMinute, mTextTimePaint);
+            canvas.drawText(mHighTempText, 0, mHighTempLength, mXOffsetHighTemp, mYOffsetHighTemp,
+                    mTextTempPaint);
+        }
+    }
+
+    private static void putTwoDigits(char[] text, int offset, int value) {
+        text[offset] = (char) ('0' + value / 10 % 10);
+        text[offset + 1] = (char) ('0' + value % 10);
+    }
+
+    /**
+     * Writes a temperature rounded to whole degrees, followed by the degree sign.
+     *
+     * @return the number of chars written
+     */
+    static int formatTemperature(double temperature, char[] text) {
+        long degrees = Math.round(temperature);
+        int length = 0;
+        if (degrees < 0) {
+            text[length++] = '-';
+            degrees = -degrees;
+        }
+        // Cap to the buffer, no real temperature gets near this
+        degrees = Math.min(degrees, 99999);
+        int digits = 1;
+        for (long rest = degrees / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = digits - 1; i >= 0; i--) {
+            text[length + i] = (char) ('0' + degrees % 10);
+            degrees /= 10;
+        }
+        length += digits;
+        text[length++] = DEGREE;
+        return length;
+    }
+}
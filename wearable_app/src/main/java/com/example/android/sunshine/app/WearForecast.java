@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.util.Base64;
+
+import com.google.android.gms.wearable.DataMap;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * The forecast window sent by the phone, one entry per day starting at Julian day
+ * {@link #startDay}.  See the phone's sync.WearForecast for the packed layout; the two must be
+ * kept in step.
+ */
+class WearForecast {
+    static final String VERSION_KEY = "version";
+    static final String START_DAY_KEY = "start_day";
+    static final String DAY_COUNT_KEY = "day_count";
+    static final String DAYS_KEY = "days";
+    static final String BASE_VERSION_KEY = "base_version";
+    static final String CHANGED_DAYS_KEY = "changed_days";
+
+    static final String ACK_PATH = "/forecast_ack";
+    static final int VERSION_NEEDS_FULL = -1;
+    // When the ack was sent, so that acking the same version twice is still a change the phone
+    // hears about
+    static final String ACK_TIME_KEY = "ack_time";
+
+    private static final int BYTES_PER_DAY = 6;
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    // Julian day of the Unix epoch
+    private static final int EPOCH_JULIAN_DAY = 2440588;
+
+    final int version;
+    // The version this one was a delta against, or 0 if it came whole
+    final int baseVersion;
+    final int startDay;
+    final int[] weatherIds;
+    final double[] highs;
+    final double[] lows;
+
+    private WearForecast(int version, int baseVersion, int startDay, int dayCount) {
+        this.version = version;
+        this.baseVersion = baseVersion;
+        this.startDay = startDay;
+        weatherIds = new int[dayCount];
+        highs = new double[dayCount];
+        lows = new double[dayCount];
+    }
+
+    int dayCount() {
+        return weatherIds.length;
+    }
+
+    /**
+     * @return the index of the Julian day in the window, or -1 if it isn't covered
+     */
+    int indexOf(int julianDay) {
+        int index = julianDay - startDay;
+        return index >= 0 && index < dayCount() ? index : -1;
+    }
+
+    /**
+     * Decodes the forecast part of a /weather data map.
+     *
+     * @param base The forecast we currently have, which a delta is applied to
+     * @return the new forecast, or null if the map has no forecast or is a delta against a
+     * version other than {@code base}
+     */
+    static WearForecast fromDataMap(DataMap dataMap, WearForecast base) {
+        if (!dataMap.containsKey(VERSION_KEY)) {
+            return null;
+        }
+        byte[] days = dataMap.getByteArray(DAYS_KEY);
+        WearForecast forecast = new WearForecast(dataMap.getInt(VERSION_KEY),
+                days != null ? 0 : dataMap.getInt(BASE_VERSION_KEY),
+                dataMap.getInt(START_DAY_KEY), dataMap.getInt(DAY_COUNT_KEY));
+        if (days != null) {
+            ByteBuffer buffer = ByteBuffer.wrap(days);
+            for (int i = 0; i < forecast.dayCount(); i++) {
+                forecast.readDay(buffer, i);
+            }
+            return forecast;
+        }
+
+        byte[] changed = dataMap.getByteArray(CHANGED_DAYS_KEY);
+        if (changed == null || base == null || base.version != dataMap.getInt(BASE_VERSION_KEY)) {
+            return null;
+        }
+        // Unchanged days come from the base, shifted if the window has moved
+        for (int i = 0; i < forecast.dayCount(); i++) {
+            int baseIndex = base.indexOf(forecast.startDay + i);
+            if (baseIndex >= 0) {
+                forecast.weatherIds[i] = base.weatherIds[baseIndex];
+                forecast.highs[i] = base.highs[baseIndex];
+                forecast.lows[i] = base.lows[baseIndex];
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(changed);
+        while (buffer.remaining() >= BYTES_PER_DAY + 1) {
+            int index = buffer.get() & 0xff;
+            if (index >= forecast.dayCount()) {
+                return null;
+            }
+            forecast.readDay(buffer, index);
+        }
+        return forecast;
+    }
+
+    /**
+     * Tells whether a /weather data map carries the window we already have, as it does when
+     * the item is fetched again after we have applied it.  The version alone doesn't say so:
+     * the window and, for a delta, the version it was made against have to match too.
+     */
+    static boolean isApplied(DataMap dataMap, WearForecast current) {
+        if (current == null || !dataMap.containsKey(VERSION_KEY)
+                || dataMap.getInt(VERSION_KEY) != current.version
+                || dataMap.getInt(START_DAY_KEY) != current.startDay
+                || dataMap.getInt(DAY_COUNT_KEY) != current.dayCount()) {
+            return false;
+        }
+        if (dataMap.getByteArray(DAYS_KEY) != null) {
+            return current.sameDaysAs(fromDataMap(dataMap, null));
+        }
+        return current.baseVersion != 0
+                && dataMap.getInt(BASE_VERSION_KEY) == current.baseVersion;
+    }
+
+    private boolean sameDaysAs(WearForecast other) {
+        return other != null && startDay == other.startDay
+                && Arrays.equals(weatherIds, other.weatherIds)
+                && Arrays.equals(highs, other.highs)
+                && Arrays.equals(lows, other.lows);
+    }
+
+    /**
+     * Stores the window, in the same packed form the phone sends, so that the face has it
+     * straight away after a restart.
+     */
+    void save(SharedPreferences.Editor editor, String prefix) {
+        ByteBuffer buffer = ByteBuffer.allocate(dayCount() * BYTES_PER_DAY);
+        for (int i = 0; i < dayCount(); i++) {
+            buffer.putShort((short) weatherIds[i]);
+            buffer.putShort((short) Math.round(highs[i] * 10));
+            buffer.putShort((short) Math.round(lows[i] * 10));
+        }
+        editor.putInt(prefix + VERSION_KEY, version);
+        editor.putInt(prefix + BASE_VERSION_KEY, baseVersion);
+        editor.putInt(prefix + START_DAY_KEY, startDay);
+        editor.putString(prefix + DAYS_KEY,
+                Base64.encodeToString(buffer.array(), Base64.NO_WRAP));
+    }
+
+    /**
+     * @return the window stored by {@link #save}, or null if there is none
+     */
+    static WearForecast load(SharedPreferences prefs, String prefix) {
+        String encoded = prefs.getString(prefix + DAYS_KEY, null);
+        if (encoded == null) {
+            return null;
+        }
+        byte[] days;
+        try {
+            days = Base64.decode(encoded, Base64.NO_WRAP);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        WearForecast forecast = new WearForecast(prefs.getInt(prefix + VERSION_KEY, 0),
+                prefs.getInt(prefix + BASE_VERSION_KEY, 0), prefs.getInt(prefix + START_DAY_KEY, 0),
+                days.length / BYTES_PER_DAY);
+        ByteBuffer buffer = ByteBuffer.wrap(days);
+        for (int i = 0; i < forecast.dayCount(); i++) {
+            forecast.readDay(buffer, i);
+        }
+        return forecast;
+    }
+
+    private void readDay(ByteBuffer buffer, int index) {
+        weatherIds[index] = buffer.getShort();
+        highs[index] = buffer.getShort() / 10.0;
+        lows[index] = buffer.getShort() / 10.0;
+    }
+
+    /**
+     * Same day numbering as the phone's Time.getJulianDay, in the local time zone.
+     */
+    static int getJulianDay(long millis, TimeZone timeZone) {
+        long localMillis = millis + timeZone.getOffset(millis);
+        return (int) (localMillis / DAY_IN_MILLIS) + EPOCH_JULIAN_DAY;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+import android.util.SparseArray;
+
+/**
+ * The weather art, decoded once on a background thread and scaled to the size it is drawn at
+ * on this watch's face, so that switching icons on a weather update is just a lookup.
+ */
+class WeatherIconCache {
+    private static final String LOG_TAG = WeatherIconCache.class.getSimpleName();
+
+    // Every resource that Utility.getArtResourceForWeatherCondition can return
+    private static final int[] ART_RESOURCES = {
+            R.drawable.art_clear,
+            R.drawable.art_clouds,
+            R.drawable.art_fog,
+            R.drawable.art_light_clouds,
+            R.drawable.art_light_rain,
+            R.drawable.art_rain,
+            R.drawable.art_snow,
+            R.drawable.art_storm
+    };
+
+    interface Listener {
+        /**
+         * Called on the thread that created the cache once the icons are ready.
+         */
+        void onIconsLoaded();
+    }
+
+    private final Resources mResources;
+    private final Listener mListener;
+    private final Handler mMainHandler;
+    private HandlerThread mThread;
+
+    // Icons by resource id, replaced as a whole once a load finishes
+    private volatile SparseArray<Bitmap> mIcons = new SparseArray<>();
+    private int mLoadedSize;
+
+    WeatherIconCache(Resources resources, Listener listener) {
+        mResources = resources;
+        mListener = listener;
+        mMainHandler = new Handler(Looper.myLooper());
+    }
+
+    /**
+     * Decodes all the icons for a round or square face, unless they are already loaded at
+     * that size.
+     */
+    void load(boolean isRound) {
+        final int size = mResources.getDimensionPixelSize(isRound
+                ? R.dimen.digital_round_icon_size : R.dimen.digital_icon_size);
+        if (size == mLoadedSize) {
+            return;
+        }
+        mLoadedSize = size;
+        if (mThread == null) {
+            mThread = new HandlerThread(LOG_TAG, android.os.Process.THREAD_PRIORITY_BACKGROUND);
+            mThread.start();
+        }
+        new Handler(mThread.getLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                final SparseArray<Bitmap> icons = new SparseArray<>(ART_RESOURCES.length);
+                for (int resource : ART_RESOURCES) {
+                    Bitmap icon = decode(resource, size);
+                    if (icon != null) {
+                        icons.put(resource, icon);
+                    }
+                }
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (size != mLoadedSize) {
+                            // Superseded by a load for the other shape
+                            return;
+                        }
+                        mIcons = icons;
+                        mListener.onIconsLoaded();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @return the icon for the weather condition, or null if there is none or the icons
+     * aren't loaded yet
+     */
+    Bitmap get(int weatherId) {
+        int resource = Utility.getArtResourceForWeatherCondition(weatherId);
+        return resource == -1 ? null : mIcons.get(resource);
+    }
+
+    void release() {
+        if (mThread != null) {
+            mThread.quit();
+            mThread = null;
+        }
+    }
+
+    /**
+     * Decodes at the smallest power of two that is still at least {@code size}, then scales
+     * down to exactly {@code size}.
+     */
+    private Bitmap decode(int resource, int size) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(mResources, resource, options);
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= size
+                && options.outHeight / (sampleSize * 2) >= size) {
+            sampleSize *= 2;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        Bitmap decoded = BitmapFactory.decodeResource(mResources, resource, options);
+        if (decoded == null) {
+            Log.w(LOG_TAG, "Couldn't decode " + mResources.getResourceEntryName(resource));
+            return null;
+        }
+        if (decoded.getWidth() == size && decoded.getHeight() == size) {
+            return decoded;
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(decoded, size, size, true);
+        if (scaled != decoded) {
+            decoded.recycle();
+        }
+        return scaled;
+    }
+}